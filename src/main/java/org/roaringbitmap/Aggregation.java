@@ -0,0 +1,208 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+/**
+ * A chain of aggregation operators computed in place, in a single bitmap, where the cardinality
+ * of the bitmap containers is only computed at the end. Each step of a query plan, such as
+ * RoaringBitmap.and followed by RoaringBitmap.or, otherwise counts the bits of every bitmap
+ * container it produces, and converts it to an array container when it gets sparse.
+ *
+ * Steps between two bitmap containers only combine their words and leave the cardinality
+ * undefined, the way {@link FastAggregation#horizontal_or(RoaringBitmap...)} does for unions.
+ * Other steps first repair the container of the accumulated result, then apply the regular
+ * in-place operator. {@link #finish()} repairs all containers and drops the empty ones.
+ *
+ * <pre>
+ * {@code
+ *      RoaringBitmap result = Aggregation.start(a).or(b).and(c).xor(d).finish();
+ * }
+ * </pre>
+ *
+ * The input bitmaps are not modified. An aggregation can only be finished once.
+ */
+public final class Aggregation {
+
+  // null once finished
+  private RoaringBitmap answer;
+
+  private Aggregation(final RoaringBitmap answer) {
+    this.answer = answer;
+  }
+
+  /**
+   * Start an aggregation from a copy of the bitmap.
+   *
+   * @param bitmap first operand, not modified
+   * @return the aggregation
+   */
+  public static Aggregation start(final RoaringBitmap bitmap) {
+    return new Aggregation(bitmap.clone());
+  }
+
+  /**
+   * Bitwise OR (union) of the current result with the bitmap.
+   *
+   * @param x2 other bitmap, not modified
+   * @return this aggregation
+   */
+  public Aggregation or(final RoaringBitmap x2) {
+    current().lazyor(x2);
+    return this;
+  }
+
+  /**
+   * Bitwise AND (intersection) of the current result with the bitmap.
+   *
+   * @param x2 other bitmap, not modified
+   * @return this aggregation
+   */
+  public Aggregation and(final RoaringBitmap x2) {
+    final RoaringArray ra = current().highLowContainer;
+    final RoaringArray ra2 = x2.highLowContainer;
+    int size = 0;
+    int pos2 = 0;
+    for (int pos1 = 0; pos1 < ra.size && pos2 < ra2.size; ++pos1) {
+      final short key = ra.keys[pos1];
+      pos2 = ra2.advanceUntil(key, pos2 - 1);
+      if (pos2 < ra2.size && ra2.keys[pos2] == key) {
+        final Container c = and(ra.values[pos1], ra2.values[pos2]);
+        if (c != null) {
+          ra.keys[size] = key;
+          ra.values[size] = c;
+          ++size;
+        }
+      }
+    }
+    ra.resize(size);
+    return this;
+  }
+
+  /**
+   * Bitwise ANDNOT (difference) of the current result with the bitmap.
+   *
+   * @param x2 other bitmap, not modified
+   * @return this aggregation
+   */
+  public Aggregation andNot(final RoaringBitmap x2) {
+    final RoaringArray ra = current().highLowContainer;
+    final RoaringArray ra2 = x2.highLowContainer;
+    int size = 0;
+    int pos2 = 0;
+    for (int pos1 = 0; pos1 < ra.size; ++pos1) {
+      final short key = ra.keys[pos1];
+      Container c = ra.values[pos1];
+      pos2 = ra2.advanceUntil(key, pos2 - 1);
+      if (pos2 < ra2.size && ra2.keys[pos2] == key) {
+        c = andNot(c, ra2.values[pos2]);
+      }
+      if (c != null) {
+        ra.keys[size] = key;
+        ra.values[size] = c;
+        ++size;
+      }
+    }
+    ra.resize(size);
+    return this;
+  }
+
+  /**
+   * Bitwise XOR (symmetric difference) of the current result with the bitmap.
+   *
+   * @param x2 other bitmap, not modified
+   * @return this aggregation
+   */
+  public Aggregation xor(final RoaringBitmap x2) {
+    final RoaringArray ra1 = current().highLowContainer;
+    final RoaringArray ra2 = x2.highLowContainer;
+    final RoaringBitmap result = new RoaringBitmap();
+    final RoaringArray ra = result.highLowContainer;
+    ra.extendArray(ra1.size + ra2.size);
+    int pos1 = 0;
+    int pos2 = 0;
+    while (pos1 < ra1.size || pos2 < ra2.size) {
+      if (pos2 == ra2.size
+          || (pos1 < ra1.size && Util.compareUnsigned(ra1.keys[pos1], ra2.keys[pos2]) < 0)) {
+        ra.append(ra1.keys[pos1], ra1.values[pos1]);
+        ++pos1;
+      } else if (pos1 == ra1.size || ra1.keys[pos1] != ra2.keys[pos2]) {
+        ra.append(ra2.keys[pos2], ra2.values[pos2].clone());
+        ++pos2;
+      } else {
+        final Container c = xor(ra1.values[pos1], ra2.values[pos2]);
+        if (c != null) {
+          ra.append(ra1.keys[pos1], c);
+        }
+        ++pos1;
+        ++pos2;
+      }
+    }
+    answer = result;
+    return this;
+  }
+
+  /**
+   * Computes the cardinality of the containers of the result and returns it. The aggregation
+   * cannot be used anymore.
+   *
+   * @return the result of the aggregation
+   */
+  public RoaringBitmap finish() {
+    final RoaringBitmap result = current();
+    final RoaringArray ra = result.highLowContainer;
+    int size = 0;
+    for (int k = 0; k < ra.size; ++k) {
+      final Container c = repair(ra.values[k]);
+      if (c != null) {
+        ra.keys[size] = ra.keys[k];
+        ra.values[size] = c;
+        ++size;
+      }
+    }
+    ra.resize(size);
+    answer = null;
+    return result;
+  }
+
+  private RoaringBitmap current() {
+    if (answer == null) {
+      throw new IllegalStateException("the aggregation is finished");
+    }
+    return answer;
+  }
+
+  // the container with its cardinality computed, null if it is empty
+  private static Container repair(final Container c) {
+    final Container answer = c.repairAfterLazy();
+    return answer.getCardinality() == 0 ? null : answer;
+  }
+
+  // the following operations modify c1, they return null when the result is known to be empty
+
+  private static Container and(final Container c1, final Container c2) {
+    if (c1 instanceof BitmapContainer && c2 instanceof BitmapContainer) {
+      return ((BitmapContainer) c1).ilazyand((BitmapContainer) c2);
+    }
+    final Container c = repair(c1);
+    return c == null ? null : repair(c.iand(c2));
+  }
+
+  private static Container andNot(final Container c1, final Container c2) {
+    if (c1 instanceof BitmapContainer && c2 instanceof BitmapContainer) {
+      return ((BitmapContainer) c1).ilazyandNot((BitmapContainer) c2);
+    }
+    final Container c = repair(c1);
+    return c == null ? null : repair(c.iandNot(c2));
+  }
+
+  private static Container xor(final Container c1, final Container c2) {
+    if (c1 instanceof BitmapContainer && c2 instanceof BitmapContainer) {
+      return ((BitmapContainer) c1).ilazyxor((BitmapContainer) c2);
+    }
+    final Container c = repair(c1);
+    // c2 must not end up in the result, since the result is modified in place
+    return c == null ? c2.clone() : repair(c.ixor(c2));
+  }
+}
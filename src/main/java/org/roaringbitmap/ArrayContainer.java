@@ -191,6 +191,18 @@ public final class ArrayContainer extends Container implements Cloneable {
         value2.getCardinality());
   }
 
+  @Override
+  public int andCardinality(Container x, int limit) {
+    if (x instanceof ArrayContainer) {
+      final ArrayContainer value2 = (ArrayContainer) x;
+      return Util.unsignedLocalIntersect2by2Cardinality(content, cardinality, value2.content,
+          value2.getCardinality(), limit);
+    } else if (x instanceof BitmapContainer) {
+      return ((BitmapContainer) x).andCardinality(this, limit);
+    }
+    return super.andCardinality(x, limit);
+  }
+
   @Override
   public int andCardinality(BitmapContainer x) {
     return x.andCardinality(this);
@@ -853,6 +865,28 @@ public final class ArrayContainer extends Container implements Cloneable {
     return numRuns;
   }
 
+  /**
+   * Counts how many runs there is in the array, up to a maximum
+   *
+   * @param mustNotExceed maximum of runs beyond which counting is pointless
+   * @return the number of runs, or a number larger than mustNotExceed
+   */
+  int numberOfRunsLowerBound(int mustNotExceed) {
+    if (cardinality == 0) {
+      return 0;
+    }
+    int numRuns = 1;
+    int oldv = Util.toIntUnsigned(content[0]);
+    for (int i = 1; i < cardinality; i++) {
+      int newv = Util.toIntUnsigned(content[i]);
+      if (oldv + 1 != newv && ++numRuns > mustNotExceed) {
+        return numRuns;
+      }
+      oldv = newv;
+    }
+    return numRuns;
+  }
+
   @Override
   public Container or(final ArrayContainer value2) {
     final ArrayContainer value1 = this;
@@ -1005,11 +1039,9 @@ public final class ArrayContainer extends Container implements Cloneable {
 
   @Override
   public Container runOptimize() {
-    // TODO: consider borrowing the BitmapContainer idea of early
-    // abandonment
-    // with ArrayContainers, when the number of runs in the arrayContainer
-    // passes some threshold based on the cardinality.
-    int numRuns = numberOfRuns();
+    // a run container is only smaller if it has fewer runs than this, stop counting beyond it
+    final int mustNotExceed = (getArraySizeInBytes() - RunContainer.serializedSizeInBytes(0)) / 4;
+    int numRuns = numberOfRunsLowerBound(mustNotExceed);
     int sizeAsRunContainer = RunContainer.serializedSizeInBytes(numRuns);
     if (getArraySizeInBytes() > sizeAsRunContainer) {
       return new RunContainer(this, numRuns); // this could be maybe
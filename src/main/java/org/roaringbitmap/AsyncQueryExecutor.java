@@ -0,0 +1,226 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs bitmap queries asynchronously on an ExecutorService, such as a ForkJoinPool or a fixed
+ * thread pool, so that many concurrent queries can be served without blocking the caller.
+ *
+ * A query is split by key range: the range of values it covers is cut into slices of a few
+ * containers, each evaluated by a separate task. Since the slices are disjoint and ordered, the
+ * partial results are concatenated without any further computation. Cancelling the returned
+ * Future cancels the slices not yet evaluated, so a cancelled query stops after at most one slice
+ * per running task: the number of containers per slice bounds the latency of a cancellation.
+ *
+ * <pre>
+ * {@code
+ *      AsyncQueryExecutor executor = new AsyncQueryExecutor(new ForkJoinPool(), 16);
+ *      Future<RoaringBitmap> result = executor.and(rb1, rb2, rb3);
+ *      // ...
+ *      RoaringBitmap rb = result.get(100, TimeUnit.MILLISECONDS);
+ * }
+ * </pre>
+ */
+public class AsyncQueryExecutor {
+
+  /**
+   * A query that can be evaluated on any range of values, such as
+   * {@link RoaringBitmap#and(java.util.Iterator, long, long)}.
+   */
+  public interface RangeQuery {
+    /**
+     * Evaluates the query on the values from rangeStart (inclusive) to rangeEnd (exclusive). This
+     * may be called concurrently for different ranges.
+     *
+     * @param rangeStart inclusive beginning of range
+     * @param rangeEnd exclusive ending of range
+     * @return a new bitmap holding the result of the query within the range
+     */
+    RoaringBitmap evaluate(long rangeStart, long rangeEnd);
+  }
+
+  private final ExecutorService executor;
+
+  private final int containersPerTask;
+
+  /**
+   * Create an executor running the queries on the provided ExecutorService, which is not shut down
+   * by this class.
+   *
+   * @param executor runs the slices of the queries
+   * @param containersPerTask number of containers (ranges of 2^16 values) evaluated by each task
+   */
+  public AsyncQueryExecutor(final ExecutorService executor, final int containersPerTask) {
+    if (containersPerTask < 1) {
+      throw new IllegalArgumentException(
+          "containersPerTask must be positive: " + containersPerTask);
+    }
+    this.executor = executor;
+    this.containersPerTask = containersPerTask;
+  }
+
+  /**
+   * Evaluates the query on the values from rangeStart (inclusive) to rangeEnd (exclusive).
+   *
+   * @param query the query
+   * @param rangeStart inclusive beginning of range
+   * @param rangeEnd exclusive ending of range
+   * @return the result of the query, once evaluated
+   */
+  public Future<RoaringBitmap> submit(final RangeQuery query, final long rangeStart,
+      final long rangeEnd) {
+    RoaringBitmap.rangeSanityCheck(rangeStart, rangeEnd);
+    final List<Future<RoaringBitmap>> parts = new ArrayList<Future<RoaringBitmap>>();
+    final long sliceSize = (long) containersPerTask << 16;
+    long start = rangeStart;
+    while (start < rangeEnd) {
+      // slices end on container boundaries
+      final long end = Math.min(rangeEnd, ((start >>> 16) << 16) + sliceSize);
+      final long sliceStart = start;
+      parts.add(executor.submit(new Callable<RoaringBitmap>() {
+        @Override
+        public RoaringBitmap call() {
+          return query.evaluate(sliceStart, end);
+        }
+      }));
+      start = end;
+    }
+    return new ConcatenatedResult(parts);
+  }
+
+  /**
+   * Computes the bitwise AND (intersection) of the bitmaps.
+   *
+   * @param bitmaps input bitmaps, these must not be modified until the result is available
+   * @return the intersection, once computed
+   */
+  public Future<RoaringBitmap> and(final RoaringBitmap... bitmaps) {
+    return submit(new RangeQuery() {
+      @Override
+      public RoaringBitmap evaluate(long rangeStart, long rangeEnd) {
+        return RoaringBitmap.and(Arrays.asList(bitmaps).iterator(), rangeStart, rangeEnd);
+      }
+    }, 0, rangeEnd(bitmaps));
+  }
+
+  /**
+   * Computes the bitwise OR (union) of the bitmaps.
+   *
+   * @param bitmaps input bitmaps, these must not be modified until the result is available
+   * @return the union, once computed
+   */
+  public Future<RoaringBitmap> or(final RoaringBitmap... bitmaps) {
+    return submit(new RangeQuery() {
+      @Override
+      public RoaringBitmap evaluate(long rangeStart, long rangeEnd) {
+        return RoaringBitmap.or(Arrays.asList(bitmaps).iterator(), rangeStart, rangeEnd);
+      }
+    }, 0, rangeEnd(bitmaps));
+  }
+
+  // exclusive end of the range of values covered by the bitmaps
+  private static long rangeEnd(final RoaringBitmap... bitmaps) {
+    long end = 0;
+    for (RoaringBitmap bitmap : bitmaps) {
+      final RoaringArray ra = bitmap.highLowContainer;
+      if (ra.size() > 0) {
+        final long last = Util.toIntUnsigned(ra.getKeyAtIndex(ra.size() - 1));
+        end = Math.max(end, (last + 1) << 16);
+      }
+    }
+    return end;
+  }
+
+  /**
+   * The partial results of the slices, concatenated in the calling thread.
+   */
+  private static final class ConcatenatedResult implements Future<RoaringBitmap> {
+
+    private final List<Future<RoaringBitmap>> parts;
+
+    private volatile boolean cancelled = false;
+
+    private RoaringBitmap result = null;
+
+    ConcatenatedResult(final List<Future<RoaringBitmap>> parts) {
+      this.parts = parts;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      if (isDone()) {
+        return false;
+      }
+      cancelled = true;
+      for (Future<RoaringBitmap> part : parts) {
+        part.cancel(mayInterruptIfRunning);
+      }
+      return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+      for (Future<RoaringBitmap> part : parts) {
+        if (!part.isDone()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public RoaringBitmap get() throws InterruptedException, ExecutionException {
+      try {
+        return get(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      } catch (TimeoutException e) {
+        throw new RuntimeException("shouldn't happen without a timeout", e);
+      }
+    }
+
+    @Override
+    public synchronized RoaringBitmap get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      if (cancelled) {
+        throw new CancellationException();
+      }
+      if (result == null) {
+        final long deadline =
+            System.nanoTime() + Math.min(unit.toNanos(timeout), Long.MAX_VALUE / 2);
+        final RoaringBitmap answer = new RoaringBitmap();
+        final RoaringArray ra = answer.highLowContainer;
+        for (Future<RoaringBitmap> part : parts) {
+          final RoaringArray partial =
+              part.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS).highLowContainer;
+          for (int i = 0; i < partial.size(); ++i) {
+            if (ra.size() > 0 && Util.compareUnsigned(partial.getKeyAtIndex(i),
+                ra.getKeyAtIndex(ra.size() - 1)) <= 0) {
+              throw new ExecutionException(
+                  new IllegalStateException("a query returned values outside of its range"));
+            }
+            ra.append(partial.getKeyAtIndex(i), partial.getContainerAtIndex(i));
+          }
+        }
+        result = answer;
+      }
+      return result;
+    }
+  }
+}
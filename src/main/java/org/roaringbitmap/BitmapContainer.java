@@ -213,6 +213,33 @@ public final class BitmapContainer extends Container implements Cloneable {
     return x.andCardinality(this);
   }
 
+  @Override
+  public int andCardinality(Container x, int limit) {
+    if (x instanceof BitmapContainer) {
+      final long[] bitmap2 = ((BitmapContainer) x).bitmap;
+      int answer = 0;
+      for (int k = 0; k < bitmap.length; ++k) {
+        answer += Long.bitCount(bitmap[k] & bitmap2[k]);
+        if (answer >= limit) {
+          return limit;
+        }
+      }
+      return answer;
+    } else if (x instanceof ArrayContainer) {
+      return andCardinality((ArrayContainer) x, limit);
+    }
+    return super.andCardinality(x, limit);
+  }
+
+  int andCardinality(final ArrayContainer value2, final int limit) {
+    int answer = 0;
+    int c = value2.cardinality;
+    for (int k = 0; k < c && answer < limit; ++k) {
+      answer += this.bitValue(value2.content[k]);
+    }
+    return answer;
+  }
+
   @Override
   public Container andNot(final ArrayContainer value2) {
     final BitmapContainer answer = clone();
@@ -610,6 +637,82 @@ public final class BitmapContainer extends Container implements Cloneable {
     }
   }
 
+  // the following operations read the words of all the containers in a single pass, instead of
+  // writing an intermediate result for each pair; the cardinality is not computed, call
+  // repairAfterLazy() afterward
+
+  // intersection of the first count containers, count >= 1
+  static BitmapContainer lazyand(final BitmapContainer[] containers, final int count) {
+    final BitmapContainer answer = new BitmapContainer();
+    answer.cardinality = -1;// invalid
+    final long[] words = answer.bitmap;
+    for (int k = 0; k < words.length; ++k) {
+      long w = containers[0].bitmap[k];
+      for (int i = 1; i < count; ++i) {
+        w &= containers[i].bitmap[k];
+      }
+      words[k] = w;
+    }
+    return answer;
+  }
+
+  // union of the first count containers
+  static BitmapContainer lazyor(final BitmapContainer[] containers, final int count) {
+    final BitmapContainer answer = new BitmapContainer();
+    answer.cardinality = -1;// invalid
+    final long[] words = answer.bitmap;
+    for (int k = 0; k < words.length; ++k) {
+      long w = 0;
+      for (int i = 0; i < count; ++i) {
+        w |= containers[i].bitmap[k];
+      }
+      words[k] = w;
+    }
+    return answer;
+  }
+
+  // values found in at least threshold of the first count containers, 1 <= threshold <= count
+  static BitmapContainer lazythreshold(final int threshold, final BitmapContainer[] containers,
+      final int count) {
+    final BitmapContainer answer = new BitmapContainer();
+    answer.cardinality = -1;// invalid
+    final long[] words = answer.bitmap;
+    // atLeast[j]: bits set in at least j of the words seen so far
+    final long[] atLeast = new long[threshold + 1];
+    atLeast[0] = -1L;
+    for (int k = 0; k < words.length; ++k) {
+      Arrays.fill(atLeast, 1, threshold + 1, 0L);
+      for (int i = 0; i < count; ++i) {
+        final long w = containers[i].bitmap[k];
+        // counts that cannot reach the threshold with the remaining words are not maintained
+        final int lowest = Math.max(1, threshold - (count - 1 - i));
+        for (int j = Math.min(i + 1, threshold); j >= lowest; --j) {
+          atLeast[j] |= atLeast[j - 1] & w;
+        }
+      }
+      words[k] = atLeast[threshold];
+    }
+    return answer;
+  }
+
+  // the cardinality is not computed, call repairAfterLazy() afterward
+  protected Container ilazyand(BitmapContainer x) {
+    this.cardinality = -1;// invalid
+    for (int k = 0; k < this.bitmap.length; k++) {
+      this.bitmap[k] &= x.bitmap[k];
+    }
+    return this;
+  }
+
+  // the cardinality is not computed, call repairAfterLazy() afterward
+  protected Container ilazyandNot(BitmapContainer x) {
+    this.cardinality = -1;// invalid
+    for (int k = 0; k < this.bitmap.length; k++) {
+      this.bitmap[k] &= ~x.bitmap[k];
+    }
+    return this;
+  }
+
   protected Container ilazyor(ArrayContainer value2) {
     this.cardinality = -1;// invalid
     int c = value2.cardinality;
@@ -640,6 +743,15 @@ public final class BitmapContainer extends Container implements Cloneable {
     return this;
   }
 
+  // the cardinality is not computed, call repairAfterLazy() afterward
+  protected Container ilazyxor(BitmapContainer x) {
+    this.cardinality = -1;// invalid
+    for (int k = 0; k < this.bitmap.length; k++) {
+      this.bitmap[k] ^= x.bitmap[k];
+    }
+    return this;
+  }
+
   @Override
   public Container inot(final int firstOfRange, final int lastOfRange) {
     int prevOnes = cardinalityInRange(firstOfRange, lastOfRange);
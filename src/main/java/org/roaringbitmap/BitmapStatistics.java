@@ -0,0 +1,373 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MappeableArrayContainer;
+import org.roaringbitmap.buffer.MappeableBitmapContainer;
+import org.roaringbitmap.buffer.MappeableContainer;
+import org.roaringbitmap.buffer.MappeableContainerPointer;
+
+/**
+ * Counts of the containers of one or more bitmaps by type, with their cardinalities, the bytes
+ * they take on the heap and once serialized, and the bytes {@link RoaringBitmap#runOptimize()}
+ * would save. Statistics are accumulated over many bitmaps, such as all the bitmaps of an index,
+ * and statistics gathered separately can be merged. Both {@link RoaringBitmap} and
+ * {@link ImmutableRoaringBitmap}, including mapped and mutable ones, are accepted.
+ *
+ * <pre>
+ * {@code
+ *      BitmapStatistics total = new BitmapStatistics();
+ *      for (RoaringBitmap rb : index) {
+ *        BitmapStatistics s = BitmapStatistics.of(rb);
+ *        if (s.getRunOptimizeSavings() > s.getSerializedBytes() / 4) {
+ *          // worth reformatting
+ *        }
+ *        total.merge(s);
+ *      }
+ * }
+ * </pre>
+ *
+ * Gathering statistics counts the runs of every array and bitmap container, which takes a pass
+ * over their values. This class is not thread-safe.
+ */
+public final class BitmapStatistics {
+
+  private static final int ARRAY = 0;
+
+  private static final int BITMAP = 1;
+
+  private static final int RUN = 2;
+
+  private long bitmaps = 0;
+
+  // the following are indexed by container type
+
+  private final long[] containers = new long[3];
+
+  private final long[] cardinalities = new long[3];
+
+  private final long[] containerHeapBytes = new long[3];
+
+  private final long[] containerSerializedBytes = new long[3];
+
+  private long runs = 0;
+
+  private long heapBytes = 0;
+
+  private long serializedBytes = 0;
+
+  private long runOptimizeSavings = 0;
+
+  /**
+   * Compute the statistics of a bitmap.
+   *
+   * @param bitmap the bitmap, not modified
+   * @return statistics of this bitmap only
+   */
+  public static BitmapStatistics of(final RoaringBitmap bitmap) {
+    final BitmapStatistics answer = new BitmapStatistics();
+    answer.add(bitmap);
+    return answer;
+  }
+
+  /**
+   * Compute the statistics of an immutable, mapped or mutable bitmap.
+   *
+   * @param bitmap the bitmap, not modified
+   * @return statistics of this bitmap only
+   */
+  public static BitmapStatistics of(final ImmutableRoaringBitmap bitmap) {
+    final BitmapStatistics answer = new BitmapStatistics();
+    answer.add(bitmap);
+    return answer;
+  }
+
+  /**
+   * Add the statistics of a bitmap to these statistics.
+   *
+   * @param bitmap the bitmap, not modified
+   */
+  public void add(final RoaringBitmap bitmap) {
+    final RoaringArray ra = bitmap.highLowContainer;
+    ++bitmaps;
+    for (int i = 0; i < ra.size; ++i) {
+      final Container c = ra.values[i];
+      final int type = c instanceof ArrayContainer ? ARRAY
+          : c instanceof BitmapContainer ? BITMAP : RUN;
+      addContainer(type, c.getCardinality(), c.numberOfRuns(), c.getSizeInBytes());
+    }
+    heapBytes += bitmap.getLongSizeInBytes();
+    serializedBytes += bitmap.serializedSizeInBytes();
+  }
+
+  /**
+   * Add the statistics of an immutable, mapped or mutable bitmap to these statistics.
+   *
+   * @param bitmap the bitmap, not modified
+   */
+  public void add(final ImmutableRoaringBitmap bitmap) {
+    final MappeableContainerPointer cp = bitmap.getContainerPointer();
+    ++bitmaps;
+    for (; cp.hasContainer(); cp.advance()) {
+      final MappeableContainer c = cp.getContainer();
+      final int type = c instanceof MappeableArrayContainer ? ARRAY
+          : c instanceof MappeableBitmapContainer ? BITMAP : RUN;
+      addContainer(type, c.getCardinality(), c.numberOfRuns(), c.getSizeInBytes());
+    }
+    heapBytes += bitmap.getLongSizeInBytes();
+    serializedBytes += bitmap.serializedSizeInBytes();
+  }
+
+  private void addContainer(final int type, final int cardinality, final int numberOfRuns,
+      final int sizeInBytes) {
+    final int serialized = serializedSizeInBytes(type, cardinality, numberOfRuns);
+    ++containers[type];
+    cardinalities[type] += cardinality;
+    containerHeapBytes[type] += sizeInBytes;
+    containerSerializedBytes[type] += serialized;
+    runs += numberOfRuns;
+    runOptimizeSavings += runOptimizeSavings(type, cardinality, numberOfRuns, serialized);
+  }
+
+  /**
+   * Add other statistics to these statistics.
+   *
+   * @param other statistics, not modified
+   */
+  public void merge(final BitmapStatistics other) {
+    bitmaps += other.bitmaps;
+    for (int type = ARRAY; type <= RUN; ++type) {
+      containers[type] += other.containers[type];
+      cardinalities[type] += other.cardinalities[type];
+      containerHeapBytes[type] += other.containerHeapBytes[type];
+      containerSerializedBytes[type] += other.containerSerializedBytes[type];
+    }
+    runs += other.runs;
+    heapBytes += other.heapBytes;
+    serializedBytes += other.serializedBytes;
+    runOptimizeSavings += other.runOptimizeSavings;
+  }
+
+  // the data of a container in the serialized format, without the headers of the bitmap
+  private static int serializedSizeInBytes(final int type, final int cardinality,
+      final int numberOfRuns) {
+    switch (type) {
+      case ARRAY:
+        return 2 * cardinality;
+      case BITMAP:
+        return BitmapContainer.serializedSizeInBytes(cardinality);
+      default:
+        return RunContainer.serializedSizeInBytes(numberOfRuns);
+    }
+  }
+
+  // the same choices as the runOptimize methods of the containers, without converting them
+  private static int runOptimizeSavings(final int type, final int cardinality,
+      final int numberOfRuns, final int serialized) {
+    final int asRuns = RunContainer.serializedSizeInBytes(numberOfRuns);
+    if (type == RUN) {
+      if (asRuns <= Math.min(BitmapContainer.serializedSizeInBytes(cardinality),
+          ArrayContainer.serializedSizeInBytes(cardinality))) {
+        return 0;
+      }
+      return asRuns - (cardinality <= ArrayContainer.DEFAULT_MAX_SIZE
+          ? ArrayContainer.serializedSizeInBytes(cardinality)
+          : BitmapContainer.serializedSizeInBytes(cardinality));
+    }
+    return Math.max(0, serialized - asRuns);
+  }
+
+  /**
+   * Number of bitmaps these statistics describe.
+   *
+   * @return the number of bitmaps
+   */
+  public long getBitmaps() {
+    return bitmaps;
+  }
+
+  /**
+   * Number of array containers.
+   *
+   * @return the number of containers
+   */
+  public long getArrayContainers() {
+    return containers[ARRAY];
+  }
+
+  /**
+   * Number of bitmap containers.
+   *
+   * @return the number of containers
+   */
+  public long getBitmapContainers() {
+    return containers[BITMAP];
+  }
+
+  /**
+   * Number of run containers.
+   *
+   * @return the number of containers
+   */
+  public long getRunContainers() {
+    return containers[RUN];
+  }
+
+  /**
+   * Number of containers of any type.
+   *
+   * @return the number of containers
+   */
+  public long getContainers() {
+    return containers[ARRAY] + containers[BITMAP] + containers[RUN];
+  }
+
+  /**
+   * Number of values held in array containers.
+   *
+   * @return the cardinality
+   */
+  public long getArrayCardinality() {
+    return cardinalities[ARRAY];
+  }
+
+  /**
+   * Number of values held in bitmap containers.
+   *
+   * @return the cardinality
+   */
+  public long getBitmapCardinality() {
+    return cardinalities[BITMAP];
+  }
+
+  /**
+   * Number of values held in run containers.
+   *
+   * @return the cardinality
+   */
+  public long getRunCardinality() {
+    return cardinalities[RUN];
+  }
+
+  /**
+   * Number of values held in containers of any type.
+   *
+   * @return the cardinality
+   */
+  public long getCardinality() {
+    return cardinalities[ARRAY] + cardinalities[BITMAP] + cardinalities[RUN];
+  }
+
+  /**
+   * Number of runs of consecutive values, in containers of any type.
+   *
+   * @return the number of runs
+   */
+  public long getRuns() {
+    return runs;
+  }
+
+  /**
+   * Estimated bytes taken by array containers on the heap.
+   *
+   * @return the number of bytes
+   */
+  public long getArrayHeapBytes() {
+    return containerHeapBytes[ARRAY];
+  }
+
+  /**
+   * Estimated bytes taken by bitmap containers on the heap.
+   *
+   * @return the number of bytes
+   */
+  public long getBitmapHeapBytes() {
+    return containerHeapBytes[BITMAP];
+  }
+
+  /**
+   * Estimated bytes taken by run containers on the heap.
+   *
+   * @return the number of bytes
+   */
+  public long getRunHeapBytes() {
+    return containerHeapBytes[RUN];
+  }
+
+  /**
+   * Bytes of serialized data of the array containers, without the headers of the bitmaps.
+   *
+   * @return the number of bytes
+   */
+  public long getArraySerializedBytes() {
+    return containerSerializedBytes[ARRAY];
+  }
+
+  /**
+   * Bytes of serialized data of the bitmap containers, without the headers of the bitmaps.
+   *
+   * @return the number of bytes
+   */
+  public long getBitmapSerializedBytes() {
+    return containerSerializedBytes[BITMAP];
+  }
+
+  /**
+   * Bytes of serialized data of the run containers, without the headers of the bitmaps.
+   *
+   * @return the number of bytes
+   */
+  public long getRunSerializedBytes() {
+    return containerSerializedBytes[RUN];
+  }
+
+  /**
+   * Estimated bytes taken on the heap by the whole bitmaps, as given by
+   * {@link RoaringBitmap#getLongSizeInBytes()}.
+   *
+   * @return the number of bytes
+   */
+  public long getHeapBytes() {
+    return heapBytes;
+  }
+
+  /**
+   * Bytes taken by the whole bitmaps once serialized, headers included, as given by
+   * {@link RoaringBitmap#serializedSizeInBytes()}.
+   *
+   * @return the number of bytes
+   */
+  public long getSerializedBytes() {
+    return serializedBytes;
+  }
+
+  /**
+   * Bytes of serialized container data that {@link RoaringBitmap#runOptimize()} would save, by
+   * converting containers to or from run containers.
+   *
+   * @return the number of bytes, 0 when the bitmaps are already optimized
+   */
+  public long getRunOptimizeSavings() {
+    return runOptimizeSavings;
+  }
+
+  @Override
+  public String toString() {
+    return "BitmapStatistics{bitmaps=" + bitmaps + ", arrayContainers=" + containers[ARRAY]
+        + ", bitmapContainers=" + containers[BITMAP] + ", runContainers=" + containers[RUN]
+        + ", arrayCardinality=" + cardinalities[ARRAY]
+        + ", bitmapCardinality=" + cardinalities[BITMAP]
+        + ", runCardinality=" + cardinalities[RUN]
+        + ", arrayHeapBytes=" + containerHeapBytes[ARRAY]
+        + ", bitmapHeapBytes=" + containerHeapBytes[BITMAP]
+        + ", runHeapBytes=" + containerHeapBytes[RUN]
+        + ", arraySerializedBytes=" + containerSerializedBytes[ARRAY]
+        + ", bitmapSerializedBytes=" + containerSerializedBytes[BITMAP]
+        + ", runSerializedBytes=" + containerSerializedBytes[RUN] + ", runs=" + runs
+        + ", heapBytes=" + heapBytes + ", serializedBytes=" + serializedBytes
+        + ", runOptimizeSavings=" + runOptimizeSavings + "}";
+  }
+}
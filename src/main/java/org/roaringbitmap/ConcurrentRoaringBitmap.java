@@ -0,0 +1,157 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+/**
+ * A thread-safe bitmap for concurrent ingestion, where many threads add or remove values at a
+ * high rate. The containers are held in a table indexed by the 16 most significant bits of the
+ * values, and the table is partitioned into lock stripes: two threads only contend when they
+ * update containers of the same stripe. Nearby values share their 16 most significant bits, hence
+ * a container and a lock, so threads ingesting nearby values contend; they only stop contending
+ * once their values are in different chunks of 65536 values.
+ *
+ * <pre>
+ * {@code
+ *      ConcurrentRoaringBitmap ingested = new ConcurrentRoaringBitmap();
+ *      // from any number of threads
+ *      ingested.add(rowId);
+ *      // once ingestion is done, or at any time
+ *      RoaringBitmap rb = ingested.toRoaringBitmap();
+ * }
+ * </pre>
+ *
+ * The table of containers takes 2^16 references whatever the content of the bitmap, so this
+ * class is meant for large bitmaps under construction rather than for many small bitmaps.
+ */
+public class ConcurrentRoaringBitmap {
+
+  private static final int STRIPES = 64;
+
+  private final Object[] locks = new Object[STRIPES];
+
+  // containers[key] is guarded by locks[key % STRIPES]
+  private final Container[] containers = new Container[1 << 16];
+
+  /**
+   * Create an empty bitmap
+   */
+  public ConcurrentRoaringBitmap() {
+    for (int k = 0; k < STRIPES; ++k) {
+      locks[k] = new Object();
+    }
+  }
+
+  private Object lockOf(int key) {
+    return locks[key & (STRIPES - 1)];
+  }
+
+  /**
+   * Add the value to the bitmap.
+   *
+   * @param x integer value
+   */
+  public void add(final int x) {
+    final int key = x >>> 16;
+    synchronized (lockOf(key)) {
+      final Container c = containers[key];
+      containers[key] = c == null ? new ArrayContainer().add(Util.lowbits(x))
+          : c.add(Util.lowbits(x));
+    }
+  }
+
+  /**
+   * Add all the specified values to the bitmap. The values are not added atomically: other
+   * threads may observe some of them before the others.
+   *
+   * @param dat set values
+   */
+  public void add(final int... dat) {
+    for (int k = 0; k < dat.length; ++k) {
+      add(dat[k]);
+    }
+  }
+
+  /**
+   * Remove the value from the bitmap, if present.
+   *
+   * @param x integer value
+   */
+  public void remove(final int x) {
+    final int key = x >>> 16;
+    synchronized (lockOf(key)) {
+      final Container c = containers[key];
+      if (c != null) {
+        final Container answer = c.remove(Util.lowbits(x));
+        containers[key] = answer.getCardinality() == 0 ? null : answer;
+      }
+    }
+  }
+
+  /**
+   * Checks whether the value in included.
+   *
+   * @param x integer value
+   * @return whether the integer value is included.
+   */
+  public boolean contains(final int x) {
+    final int key = x >>> 16;
+    synchronized (lockOf(key)) {
+      final Container c = containers[key];
+      return c != null && c.contains(Util.lowbits(x));
+    }
+  }
+
+  /**
+   * Returns the number of distinct integers in the bitmap. Concurrent updates may or may not be
+   * counted, use {@link #toRoaringBitmap()} for a consistent view.
+   *
+   * @return the cardinality
+   */
+  public long getLongCardinality() {
+    long answer = 0;
+    // one lock acquisition per stripe, visiting the keys it guards
+    for (int stripe = 0; stripe < STRIPES; ++stripe) {
+      synchronized (locks[stripe]) {
+        for (int key = stripe; key < containers.length; key += STRIPES) {
+          if (containers[key] != null) {
+            answer += containers[key].getCardinality();
+          }
+        }
+      }
+    }
+    return answer;
+  }
+
+  /**
+   * Copy the content of the bitmap. All the stripes are locked while copying, so the result
+   * reflects the content of the bitmap at a single point in time.
+   *
+   * @return a new bitmap
+   */
+  public RoaringBitmap toRoaringBitmap() {
+    return snapshot(0);
+  }
+
+  // acquires the locks from the given stripe on, then copies the containers
+  private RoaringBitmap snapshot(int stripe) {
+    if (stripe < STRIPES) {
+      synchronized (locks[stripe]) {
+        return snapshot(stripe + 1);
+      }
+    }
+    final RoaringBitmap answer = new RoaringBitmap();
+    for (int key = 0; key < containers.length; ++key) {
+      if (containers[key] != null) {
+        answer.highLowContainer.append((short) key, containers[key].clone());
+      }
+    }
+    return answer;
+  }
+
+  @Override
+  public String toString() {
+    return toRoaringBitmap().toString();
+  }
+}
@@ -75,12 +75,19 @@ public abstract class Container implements Iterable<Short>, Cloneable, Externali
    * @return aggregated container
    */
   public Container and(Container x) {
+    final long start = ContainerMetrics.ENABLED ? System.nanoTime() : 0;
+    final Container answer;
     if (x instanceof ArrayContainer) {
-      return and((ArrayContainer) x);
+      answer = and((ArrayContainer) x);
     } else if (x instanceof BitmapContainer) {
-      return and((BitmapContainer) x);
+      answer = and((BitmapContainer) x);
+    } else {
+      answer = and((RunContainer) x);
+    }
+    if (ContainerMetrics.ENABLED) {
+      ContainerMetrics.record(ContainerMetrics.Operation.AND, this, x, start);
     }
-    return and((RunContainer) x);
+    return answer;
   }
 
 
@@ -121,6 +128,19 @@ public abstract class Container implements Iterable<Short>, Cloneable, Externali
     }
   }
 
+  /**
+   * Computes the cardinality of the intersection of this container with another one, stopping as
+   * soon as it reaches the limit. This container as well as the provided container are left
+   * unaffected.
+   *
+   * @param x other container
+   * @param limit cardinality beyond which the intersection need not be counted
+   * @return the cardinality of the intersection, or limit if it is larger
+   */
+  public int andCardinality(Container x, int limit) {
+    return Math.min(andCardinality(x), limit);
+  }
+
 
   /**
    * Computes the bitwise ANDNOT of this container with another (difference). This container as well
@@ -148,12 +168,19 @@ public abstract class Container implements Iterable<Short>, Cloneable, Externali
    * @return aggregated container
    */
   public Container andNot(Container x) {
+    final long start = ContainerMetrics.ENABLED ? System.nanoTime() : 0;
+    final Container answer;
     if (x instanceof ArrayContainer) {
-      return andNot((ArrayContainer) x);
+      answer = andNot((ArrayContainer) x);
     } else if (x instanceof BitmapContainer) {
-      return andNot((BitmapContainer) x);
+      answer = andNot((BitmapContainer) x);
+    } else {
+      answer = andNot((RunContainer) x);
+    }
+    if (ContainerMetrics.ENABLED) {
+      ContainerMetrics.record(ContainerMetrics.Operation.ANDNOT, this, x, start);
     }
-    return andNot((RunContainer) x);
+    return answer;
   }
 
 
@@ -678,12 +705,19 @@ public abstract class Container implements Iterable<Short>, Cloneable, Externali
    * @return aggregated container
    */
   public Container or(Container x) {
+    final long start = ContainerMetrics.ENABLED ? System.nanoTime() : 0;
+    final Container answer;
     if (x instanceof ArrayContainer) {
-      return or((ArrayContainer) x);
+      answer = or((ArrayContainer) x);
     } else if (x instanceof BitmapContainer) {
-      return or((BitmapContainer) x);
+      answer = or((BitmapContainer) x);
+    } else {
+      answer = or((RunContainer) x);
+    }
+    if (ContainerMetrics.ENABLED) {
+      ContainerMetrics.record(ContainerMetrics.Operation.OR, this, x, start);
     }
-    return or((RunContainer) x);
+    return answer;
   }
 
   /**
@@ -812,12 +846,19 @@ public abstract class Container implements Iterable<Short>, Cloneable, Externali
    * @return aggregated container
    */
   public Container xor(Container x) {
+    final long start = ContainerMetrics.ENABLED ? System.nanoTime() : 0;
+    final Container answer;
     if (x instanceof ArrayContainer) {
-      return xor((ArrayContainer) x);
+      answer = xor((ArrayContainer) x);
     } else if (x instanceof BitmapContainer) {
-      return xor((BitmapContainer) x);
+      answer = xor((BitmapContainer) x);
+    } else {
+      answer = xor((RunContainer) x);
     }
-    return xor((RunContainer) x);
+    if (ContainerMetrics.ENABLED) {
+      ContainerMetrics.record(ContainerMetrics.Operation.XOR, this, x, start);
+    }
+    return answer;
   }
 
   /**
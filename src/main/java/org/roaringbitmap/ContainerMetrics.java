@@ -0,0 +1,196 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts of the binary operations between containers, with the time they took, for each operator
+ * and each pair of container types. These tell which pairings, such as an array container and a
+ * bitmap container, dominate a workload, so that optimizations target them.
+ *
+ * The counting is off unless the JVM starts with the system property
+ * {@value #ENABLED_PROPERTY} set to true. The flag is read once, into a constant, so that the
+ * JIT compiler removes the counting when it is off.
+ *
+ * <pre>
+ * {@code
+ *      // java -Dorg.roaringbitmap.metrics=true ...
+ *      ContainerMetrics.Snapshot snapshot = ContainerMetrics.snapshot();
+ *      long count = snapshot.getCount(ContainerMetrics.Operation.AND,
+ *          ContainerMetrics.Type.ARRAY, ContainerMetrics.Type.BITMAP);
+ * }
+ * </pre>
+ *
+ * Only the operations dispatched by {@link Container#and(Container)},
+ * {@link Container#andNot(Container)}, {@link Container#or(Container)} and
+ * {@link Container#xor(Container)} are counted.
+ */
+public final class ContainerMetrics {
+
+  /**
+   * Name of the system property enabling the counting.
+   */
+  public static final String ENABLED_PROPERTY = "org.roaringbitmap.metrics";
+
+  static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+
+  /**
+   * Operators between two containers.
+   */
+  public enum Operation {
+    AND, ANDNOT, OR, XOR
+  }
+
+  /**
+   * Types of containers.
+   */
+  public enum Type {
+    ARRAY, BITMAP, RUN
+  }
+
+  private static final int TYPES = Type.values().length;
+
+  private static final int SLOTS = Operation.values().length * TYPES * TYPES;
+
+  private static final AtomicLongArray COUNTS = new AtomicLongArray(SLOTS);
+
+  private static final AtomicLongArray NANOS = new AtomicLongArray(SLOTS);
+
+  private ContainerMetrics() {
+  }
+
+  /**
+   * Whether operations are counted.
+   *
+   * @return the value of the system property when this class was loaded
+   */
+  public static boolean isEnabled() {
+    return ENABLED;
+  }
+
+  /**
+   * Copy the current counts. Operations running concurrently may or may not be included.
+   *
+   * @return the counts
+   */
+  public static Snapshot snapshot() {
+    final long[] counts = new long[SLOTS];
+    final long[] nanos = new long[SLOTS];
+    for (int k = 0; k < SLOTS; ++k) {
+      counts[k] = COUNTS.get(k);
+      nanos[k] = NANOS.get(k);
+    }
+    return new Snapshot(counts, nanos);
+  }
+
+  /**
+   * Set all counts back to zero.
+   */
+  public static void reset() {
+    for (int k = 0; k < SLOTS; ++k) {
+      COUNTS.set(k, 0);
+      NANOS.set(k, 0);
+    }
+  }
+
+  // start is the value of System.nanoTime() before the operation
+  static void record(final Operation operation, final Container x1, final Container x2,
+      final long start) {
+    final int slot = slot(operation, type(x1), type(x2));
+    COUNTS.incrementAndGet(slot);
+    NANOS.addAndGet(slot, System.nanoTime() - start);
+  }
+
+  private static Type type(final Container c) {
+    if (c instanceof ArrayContainer) {
+      return Type.ARRAY;
+    } else if (c instanceof BitmapContainer) {
+      return Type.BITMAP;
+    }
+    return Type.RUN;
+  }
+
+  private static int slot(final Operation operation, final Type left, final Type right) {
+    return (operation.ordinal() * TYPES + left.ordinal()) * TYPES + right.ordinal();
+  }
+
+  /**
+   * Counts copied at some point in time.
+   */
+  public static final class Snapshot {
+
+    private final long[] counts;
+
+    private final long[] nanos;
+
+    Snapshot(final long[] counts, final long[] nanos) {
+      this.counts = counts;
+      this.nanos = nanos;
+    }
+
+    /**
+     * Number of operations between a container of the left type and one of the right type.
+     *
+     * @param operation the operator
+     * @param left type of the container the operator was called on
+     * @param right type of the other container
+     * @return the number of operations
+     */
+    public long getCount(final Operation operation, final Type left, final Type right) {
+      return counts[slot(operation, left, right)];
+    }
+
+    /**
+     * Time taken by the operations between a container of the left type and one of the right
+     * type.
+     *
+     * @param operation the operator
+     * @param left type of the container the operator was called on
+     * @param right type of the other container
+     * @return the elapsed time in nanoseconds
+     */
+    public long getNanos(final Operation operation, final Type left, final Type right) {
+      return nanos[slot(operation, left, right)];
+    }
+
+    /**
+     * Number of operations of any type.
+     *
+     * @return the number of operations
+     */
+    public long getTotalCount() {
+      long answer = 0;
+      for (long count : counts) {
+        answer += count;
+      }
+      return answer;
+    }
+
+    /**
+     * One line for each operator and pair of types that was counted, such as
+     * "AND ARRAY BITMAP count=12 nanos=3400".
+     *
+     * @return the counts as text
+     */
+    @Override
+    public String toString() {
+      final StringBuilder answer = new StringBuilder();
+      for (Operation operation : Operation.values()) {
+        for (Type left : Type.values()) {
+          for (Type right : Type.values()) {
+            final int slot = slot(operation, left, right);
+            if (counts[slot] != 0) {
+              answer.append(operation).append(' ').append(left).append(' ').append(right)
+                  .append(" count=").append(counts[slot]).append(" nanos=").append(nanos[slot])
+                  .append('\n');
+            }
+          }
+        }
+      }
+      return answer.toString();
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+/**
+ * Chooses the container types of a bitmap from the way it is used, rather than only from its
+ * size as {@link RoaringBitmap#runOptimize()} does. Keep one policy per bitmap, record the
+ * operations made on it, and apply the policy from time to time, for example when a bitmap
+ * becomes hot:
+ *
+ * <ul>
+ * <li>When point queries ({@code contains}, {@code rank}) and operations against other bitmaps
+ * dominate, run containers holding more than a few runs are converted to bitmap or array
+ * containers, where such operations do not need to search among the runs.</li>
+ * <li>When range operations (adding, removing, flipping or counting ranges) dominate, array and
+ * bitmap containers made of long runs are converted to run containers, even when these take
+ * more bytes, since range operations then only touch a few runs.</li>
+ * <li>Without any recorded operation, this is the same as {@link RoaringBitmap#runOptimize()}.
+ * </li>
+ * </ul>
+ *
+ * A container holding at most 4096 values is never stored as a bitmap container, since the
+ * serialized format tells array and bitmap containers apart by their cardinality.
+ *
+ * <pre>
+ * {@code
+ *      ContainerTypePolicy policy = new ContainerTypePolicy();
+ *      // ... while serving queries
+ *      policy.recordPointQueries(1);
+ *      // ... from time to time
+ *      policy.apply(hotFilter);
+ * }
+ * </pre>
+ *
+ * This class is not thread-safe.
+ */
+public final class ContainerTypePolicy {
+
+  // run containers with at most this many runs are cheap to search, whatever the access pattern
+  static final int FEW_RUNS = 8;
+
+  // minimal average run length for run containers to be preferred for range operations
+  static final int MIN_AVERAGE_RUN_LENGTH = 8;
+
+  private long pointQueries = 0;
+
+  private long bitmapOperations = 0;
+
+  private long rangeOperations = 0;
+
+  /**
+   * Record point queries, such as contains or rank.
+   *
+   * @param count number of queries
+   */
+  public void recordPointQueries(final long count) {
+    pointQueries += count;
+  }
+
+  /**
+   * Record operations against other bitmaps, such as and, or or andCardinality.
+   *
+   * @param count number of operations
+   */
+  public void recordBitmapOperations(final long count) {
+    bitmapOperations += count;
+  }
+
+  /**
+   * Record range operations, such as adding, removing or flipping ranges, or counting the values
+   * of a range.
+   *
+   * @param count number of operations
+   */
+  public void recordRangeOperations(final long count) {
+    rangeOperations += count;
+  }
+
+  /**
+   * Forget the recorded operations.
+   */
+  public void reset() {
+    pointQueries = 0;
+    bitmapOperations = 0;
+    rangeOperations = 0;
+  }
+
+  /**
+   * Convert the containers of the bitmap according to the recorded operations.
+   *
+   * @param bitmap the bitmap to optimize
+   * @return whether a container was converted
+   */
+  public boolean apply(final RoaringBitmap bitmap) {
+    final RoaringArray ra = bitmap.highLowContainer;
+    final long lookups = pointQueries + bitmapOperations;
+    boolean answer = false;
+    for (int i = 0; i < ra.size(); ++i) {
+      final Container c = ra.getContainerAtIndex(i);
+      final Container converted;
+      if (rangeOperations > lookups) {
+        converted = forRanges(c);
+      } else if (lookups > 0) {
+        converted = forLookups(c);
+      } else {
+        converted = c.runOptimize();
+      }
+      if (converted != c) {
+        ra.setContainerAtIndex(i, converted);
+        answer = true;
+      }
+    }
+    return answer;
+  }
+
+  private static Container forLookups(final Container c) {
+    if (c instanceof RunContainer) {
+      final RunContainer rc = (RunContainer) c;
+      if (rc.numberOfRuns() > FEW_RUNS) {
+        return rc.toBitmapOrArrayContainer(rc.getCardinality());
+      }
+    }
+    return c;
+  }
+
+  private static Container forRanges(final Container c) {
+    if (c instanceof RunContainer) {
+      return c;
+    }
+    final int mustNotExceed = c.getCardinality() / MIN_AVERAGE_RUN_LENGTH;
+    if (c instanceof ArrayContainer) {
+      final ArrayContainer ac = (ArrayContainer) c;
+      final int numRuns = ac.numberOfRunsLowerBound(mustNotExceed);
+      return numRuns <= mustNotExceed ? new RunContainer(ac, numRuns) : c;
+    }
+    final BitmapContainer bc = (BitmapContainer) c;
+    int numRuns = bc.numberOfRunsLowerBound(mustNotExceed);
+    if (numRuns > mustNotExceed) {
+      return c;
+    }
+    numRuns += bc.numberOfRunsAdjustment();
+    return numRuns <= mustNotExceed ? new RunContainer(bc, numRuns) : c;
+  }
+}
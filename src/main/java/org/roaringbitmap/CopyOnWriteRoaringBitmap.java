@@ -0,0 +1,186 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * A thread-safe bitmap for read-mostly workloads. Readers never block: they work on an immutable
+ * snapshot, published through a volatile reference. Writers are serialized with each other and
+ * copy on write: an update copies the arrays of keys and container references, clones only the
+ * containers it modifies, and publishes the new snapshot in a single volatile write.
+ *
+ * <pre>
+ * {@code
+ *      CopyOnWriteRoaringBitmap index = new CopyOnWriteRoaringBitmap();
+ *      index.add(1, 2, 3); // writer thread
+ *      if (index.contains(2)) { // any reader thread
+ *        RoaringBitmap result = RoaringBitmap.and(index.snapshot(), filter);
+ *      }
+ * }
+ * </pre>
+ *
+ * Each update costs a copy of the key array, so batching values with {@link #add(int...)} or
+ * {@link #remove(int...)} is preferable to many single updates.
+ */
+public class CopyOnWriteRoaringBitmap {
+
+  // never modified once published
+  private volatile RoaringBitmap snapshot;
+
+  /**
+   * Create an empty bitmap
+   */
+  public CopyOnWriteRoaringBitmap() {
+    this.snapshot = new RoaringBitmap();
+  }
+
+  /**
+   * Create a bitmap holding a copy of the provided bitmap
+   *
+   * @param initial initial content, not modified
+   */
+  public CopyOnWriteRoaringBitmap(final RoaringBitmap initial) {
+    this.snapshot = initial.clone();
+  }
+
+  /**
+   * Return the current content of the bitmap. The snapshot is not affected by later updates and
+   * can be used with any read-only operation, but it must not be modified.
+   *
+   * @return the current snapshot
+   */
+  public RoaringBitmap snapshot() {
+    return snapshot;
+  }
+
+  /**
+   * Return a copy of the current content of the bitmap, which can be modified.
+   *
+   * @return a new bitmap
+   */
+  public RoaringBitmap toRoaringBitmap() {
+    return snapshot.clone();
+  }
+
+  /**
+   * Checks whether the value in included in the current snapshot.
+   *
+   * @param x integer value
+   * @return whether the integer value is included.
+   */
+  public boolean contains(final int x) {
+    return snapshot.contains(x);
+  }
+
+  /**
+   * Returns the cardinality of the current snapshot.
+   *
+   * @return the cardinality
+   */
+  public long getLongCardinality() {
+    return snapshot.getLongCardinality();
+  }
+
+  /**
+   * Checks whether the current snapshot is empty.
+   *
+   * @return true if the current snapshot contains no set bit
+   */
+  public boolean isEmpty() {
+    return snapshot.isEmpty();
+  }
+
+  /**
+   * Add the value to the bitmap.
+   *
+   * @param x integer value
+   */
+  public synchronized void add(final int x) {
+    if (!snapshot.contains(x)) {
+      update(new int[] {x}, true);
+    }
+  }
+
+  /**
+   * Add all the specified values to the bitmap, publishing them together.
+   *
+   * @param dat set values
+   */
+  public synchronized void add(final int... dat) {
+    update(dat, true);
+  }
+
+  /**
+   * Remove the value from the bitmap.
+   *
+   * @param x integer value
+   */
+  public synchronized void remove(final int x) {
+    if (snapshot.contains(x)) {
+      update(new int[] {x}, false);
+    }
+  }
+
+  /**
+   * Remove all the specified values from the bitmap, publishing the removals together.
+   *
+   * @param dat values to remove
+   */
+  public synchronized void remove(final int... dat) {
+    update(dat, false);
+  }
+
+  // must be called while holding the lock
+  private void update(final int[] dat, final boolean add) {
+    final RoaringBitmap current = snapshot;
+    final RoaringBitmap next = new RoaringBitmap();
+    next.highLowContainer = current.highLowContainer.shallowCopy();
+    final RoaringArray ra = next.highLowContainer;
+    // containers created by this update, which can be modified in place
+    final Set<Container> owned =
+        Collections.newSetFromMap(new IdentityHashMap<Container, Boolean>());
+    boolean changed = false;
+    for (final int x : dat) {
+      final short hb = Util.highbits(x);
+      final short lb = Util.lowbits(x);
+      final int i = ra.getIndex(hb);
+      if (i < 0) {
+        if (add) {
+          final Container c = new ArrayContainer().add(lb);
+          ra.insertNewKeyValueAt(-i - 1, hb, c);
+          owned.add(c);
+          changed = true;
+        }
+        continue;
+      }
+      Container c = ra.getContainerAtIndex(i);
+      if (c.contains(lb) == add) {
+        continue;
+      }
+      if (!owned.contains(c)) {
+        c = c.clone();
+      }
+      c = add ? c.add(lb) : c.remove(lb);
+      if (c.getCardinality() == 0) {
+        ra.removeAtIndex(i);
+      } else {
+        ra.setContainerAtIndex(i, c);
+        owned.add(c);
+      }
+      changed = true;
+    }
+    if (changed) {
+      snapshot = next;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return snapshot.toString();
+  }
+}
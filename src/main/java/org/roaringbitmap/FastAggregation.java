@@ -11,6 +11,10 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 
 
@@ -482,6 +486,225 @@ public final class FastAggregation {
     return answer;
   }
 
+  /**
+   * Compute overall OR between bitmaps on several threads. The bitmaps are split into as many
+   * contiguous groups as there are tasks; each task ORs the bitmaps of its group lazily, as in
+   * {@link #naive_or(RoaringBitmap...)}, into its own bitmap. The partial results are then merged
+   * lazily by the calling thread and the cardinalities are only computed once, at the end.
+   *
+   * This is worth it for thousands of bitmaps, such as the expansion of a long IN list.
+   *
+   * @param executor executor running the tasks
+   * @param tasks number of tasks, typically the number of threads of the executor
+   * @param bitmaps input bitmaps, these must not be modified until this method returns
+   * @return aggregated bitmap
+   * @throws InterruptedException if interrupted while waiting for the tasks
+   */
+  public static RoaringBitmap parallel_or(ExecutorService executor, int tasks,
+      final RoaringBitmap... bitmaps) throws InterruptedException {
+    if (tasks < 1) {
+      throw new IllegalArgumentException("tasks must be positive: " + tasks);
+    }
+    final int groupSize = (bitmaps.length + tasks - 1) / tasks;
+    final List<Future<RoaringBitmap>> partials = new ArrayList<Future<RoaringBitmap>>(tasks);
+    for (int start = 0; start < bitmaps.length; start += groupSize) {
+      final int begin = start;
+      final int end = Math.min(bitmaps.length, start + groupSize);
+      partials.add(executor.submit(new Callable<RoaringBitmap>() {
+        @Override
+        public RoaringBitmap call() {
+          final RoaringBitmap partial = new RoaringBitmap();
+          for (int k = begin; k < end; ++k) {
+            partial.naivelazyor(bitmaps[k]);
+          }
+          return partial;
+        }
+      }));
+    }
+    RoaringBitmap answer = new RoaringBitmap();
+    try {
+      for (Future<RoaringBitmap> partial : partials) {
+        answer = RoaringBitmap.lazyorfromlazyinputs(answer, partial.get());
+      }
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      for (Future<RoaringBitmap> partial : partials) {
+        partial.cancel(true);
+      }
+    }
+    answer.repairAfterLazy();
+    return answer;
+  }
+
+  /**
+   * Compute overall OR between bitmaps on several threads, see
+   * {@link #parallel_or(ExecutorService, int, RoaringBitmap...)}.
+   *
+   * @param executor executor running the tasks
+   * @param tasks number of tasks, typically the number of threads of the executor
+   * @param bitmaps input bitmaps, these must not be modified until this method returns
+   * @return aggregated bitmap
+   * @throws InterruptedException if interrupted while waiting for the tasks
+   */
+  public static RoaringBitmap parallel_or(ExecutorService executor, int tasks,
+      List<? extends RoaringBitmap> bitmaps) throws InterruptedException {
+    return parallel_or(executor, tasks, bitmaps.toArray(new RoaringBitmap[bitmaps.size()]));
+  }
+
+  /**
+   * Compute overall AND between bitmaps. The bitmap containers sharing a key are intersected in a
+   * single pass over their words, rather than two-by-two as in
+   * {@link #naive_and(RoaringBitmap...)} which writes an intermediate container at each step.
+   *
+   * @param bitmaps input bitmaps
+   * @return aggregated bitmap
+   */
+  public static RoaringBitmap fused_and(RoaringBitmap... bitmaps) {
+    if (bitmaps.length == 0) {
+      return new RoaringBitmap();
+    }
+    return threshold(bitmaps.length, bitmaps);
+  }
+
+  /**
+   * Compute overall OR between bitmaps. The bitmap containers sharing a key are combined in a
+   * single pass over their words, rather than two-by-two as in {@link #naive_or(RoaringBitmap...)}.
+   *
+   * @param bitmaps input bitmaps
+   * @return aggregated bitmap
+   */
+  public static RoaringBitmap fused_or(RoaringBitmap... bitmaps) {
+    return threshold(1, bitmaps);
+  }
+
+  /**
+   * Compute the values found in at least threshold of the bitmaps. This is the union of the
+   * intersections of all combinations of threshold bitmaps, but it is computed one key at a time
+   * in a single pass over the words of the bitmap containers, keeping for each bit how many
+   * bitmaps hold it, up to threshold.
+   *
+   * @param threshold minimal number of bitmaps holding a value, at least 1
+   * @param bitmaps input bitmaps
+   * @return aggregated bitmap
+   */
+  public static RoaringBitmap threshold(int threshold, RoaringBitmap... bitmaps) {
+    return threshold(threshold, 0, 1L << 32, bitmaps);
+  }
+
+  /**
+   * Compute the values from rangeStart (inclusive) to rangeEnd (exclusive) found in at least
+   * threshold of the bitmaps, see {@link #threshold(int, RoaringBitmap...)}.
+   *
+   * @param threshold minimal number of bitmaps holding a value, at least 1
+   * @param rangeStart inclusive beginning of range
+   * @param rangeEnd exclusive ending of range
+   * @param bitmaps input bitmaps
+   * @return aggregated bitmap
+   */
+  public static RoaringBitmap threshold(int threshold, long rangeStart, long rangeEnd,
+      RoaringBitmap... bitmaps) {
+    if (threshold < 1) {
+      throw new IllegalArgumentException("threshold must be positive: " + threshold);
+    }
+    RoaringBitmap.rangeSanityCheck(rangeStart, rangeEnd);
+    final RoaringBitmap answer = new RoaringBitmap();
+    if (threshold > bitmaps.length || rangeStart >= rangeEnd) {
+      return answer;
+    }
+    final int firstKey = (int) (rangeStart >>> 16);
+    final int lastKey = (int) ((rangeEnd - 1) >>> 16);
+    final int[] positions = new int[bitmaps.length];
+    for (int k = 0; k < bitmaps.length; ++k) {
+      positions[k] = bitmaps[k].highLowContainer.advanceUntil((short) firstKey, -1);
+    }
+    final Container[] containers = new Container[bitmaps.length];
+    final BitmapContainer[] buffer = new BitmapContainer[bitmaps.length];
+    while (true) {
+      int key = lastKey + 1;
+      for (int k = 0; k < bitmaps.length; ++k) {
+        final RoaringArray ra = bitmaps[k].highLowContainer;
+        if (positions[k] < ra.size) {
+          key = Math.min(key, Util.toIntUnsigned(ra.keys[positions[k]]));
+        }
+      }
+      if (key > lastKey) {
+        break;
+      }
+      int count = 0;
+      for (int k = 0; k < bitmaps.length; ++k) {
+        final RoaringArray ra = bitmaps[k].highLowContainer;
+        if (positions[k] < ra.size && Util.toIntUnsigned(ra.keys[positions[k]]) == key) {
+          containers[count++] = ra.values[positions[k]++];
+        }
+      }
+      if (count < threshold) {
+        continue;
+      }
+      Container c = threshold(threshold, containers, count, buffer);
+      if (key == firstKey && (rangeStart & 0xFFFF) != 0) {
+        c = c.iremove(0, (int) (rangeStart & 0xFFFF));
+      }
+      if (key == lastKey && ((rangeEnd - 1) & 0xFFFF) != 0xFFFF) {
+        c = c.iremove((int) ((rangeEnd - 1) & 0xFFFF) + 1, 1 << 16);
+      }
+      if (c.getCardinality() > 0) {
+        answer.highLowContainer.append((short) key, c);
+      }
+    }
+    return answer;
+  }
+
+  // values found in at least threshold of the count containers, a new container
+  private static Container threshold(final int threshold, final Container[] containers,
+      final int count, final BitmapContainer[] buffer) {
+    if (count == 1) {
+      return containers[0].clone();
+    }
+    int bitmapCount = 0;
+    if (threshold == 1) {
+      // the bitmap containers first, then the other ones lazily
+      for (int i = 0; i < count; ++i) {
+        if (containers[i] instanceof BitmapContainer) {
+          buffer[bitmapCount++] = (BitmapContainer) containers[i];
+        }
+      }
+      Container answer = bitmapCount > 0 ? BitmapContainer.lazyor(buffer, bitmapCount) : null;
+      for (int i = 0; i < count; ++i) {
+        if (!(containers[i] instanceof BitmapContainer)) {
+          answer = answer == null ? containers[i].clone() : answer.lazyIOR(containers[i]);
+        }
+      }
+      return answer.repairAfterLazy();
+    }
+    if (threshold == count) {
+      // the sparse containers first, since their intersection is small
+      Container answer = null;
+      for (int i = 0; i < count; ++i) {
+        if (containers[i] instanceof BitmapContainer) {
+          buffer[bitmapCount++] = (BitmapContainer) containers[i];
+        } else {
+          answer = answer == null ? containers[i] : answer.and(containers[i]);
+        }
+      }
+      if (answer == null) {
+        return BitmapContainer.lazyand(buffer, bitmapCount).repairAfterLazy();
+      }
+      if (bitmapCount == 0) {
+        return answer;
+      }
+      for (int i = 0; i < bitmapCount && answer.getCardinality() > 0; ++i) {
+        answer = answer.and(buffer[i]);
+      }
+      return answer;
+    }
+    for (int i = 0; i < count; ++i) {
+      buffer[i] = containers[i] instanceof BitmapContainer ? (BitmapContainer) containers[i]
+          : containers[i].toBitmapContainer();
+    }
+    return BitmapContainer.lazythreshold(threshold, buffer, count).repairAfterLazy();
+  }
+
   /**
    * Uses a priority queue to compute the xor aggregate.
    *
@@ -0,0 +1,330 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.util.Iterator;
+
+/**
+ * A RoaringBitmap which caches the cumulated cardinalities of its containers, so that
+ * {@link #rankLong(int)}, {@link #select(int)} and {@link #getLongCardinality()} run in
+ * logarithmic time with respect to the number of containers. Within bitmap containers, rank and
+ * select start from sampled word-level ranks instead of scanning the whole container.
+ *
+ * The cache is built lazily on the first rank or select query and discarded by any mutation, so
+ * this class is best suited to bitmaps that are queried many times between updates (e.g., for
+ * pagination over a query result).
+ */
+public class FastRankRoaringBitmap extends RoaringBitmap {
+
+  private static final long serialVersionUID = 1L;
+
+  // one rank sample every SAMPLE_WORDS 64-bit words within bitmap containers
+  private static final int SAMPLE_WORDS = 32;
+
+  private boolean cumulatedCardinalitiesCacheIsValid = false;
+
+  // cumulatedCardinalities[i] is the cardinality of the containers 0, 1, ..., i
+  private long[] cumulatedCardinalities = null;
+
+  // word-level rank samples of bitmap containers, built on demand
+  private int[][] bitmapRankSamples = null;
+
+  /**
+   * Create an empty bitmap
+   */
+  public FastRankRoaringBitmap() {
+    super();
+  }
+
+  private void resetCache() {
+    cumulatedCardinalitiesCacheIsValid = false;
+  }
+
+  private void preComputeCardinalities() {
+    if (cumulatedCardinalitiesCacheIsValid) {
+      return;
+    }
+    final int size = highLowContainer.size();
+    // always allocate, clones may share the previous arrays
+    final long[] cumulated = new long[size];
+    long sum = 0;
+    for (int i = 0; i < size; ++i) {
+      sum += highLowContainer.getContainerAtIndex(i).getCardinality();
+      cumulated[i] = sum;
+    }
+    cumulatedCardinalities = cumulated;
+    bitmapRankSamples = new int[size][];
+    cumulatedCardinalitiesCacheIsValid = true;
+  }
+
+  // samples[k] is the number of set bits in the words before k * SAMPLE_WORDS
+  private int[] rankSamples(int index, BitmapContainer bc) {
+    int[] samples = bitmapRankSamples[index];
+    if (samples == null) {
+      samples = new int[bc.bitmap.length / SAMPLE_WORDS];
+      int sum = 0;
+      for (int k = 0; k < samples.length; ++k) {
+        samples[k] = sum;
+        for (int w = k * SAMPLE_WORDS; w < (k + 1) * SAMPLE_WORDS; ++w) {
+          sum += Long.bitCount(bc.bitmap[w]);
+        }
+      }
+      bitmapRankSamples[index] = samples;
+    }
+    return samples;
+  }
+
+  private int rank(int index, Container c, short lowbits) {
+    if (!(c instanceof BitmapContainer)) {
+      return c.rank(lowbits);
+    }
+    final BitmapContainer bc = (BitmapContainer) c;
+    final int x = Util.toIntUnsigned(lowbits);
+    final int word = x >>> 6;
+    int answer = rankSamples(index, bc)[word / SAMPLE_WORDS];
+    for (int k = word - word % SAMPLE_WORDS; k < word; ++k) {
+      answer += Long.bitCount(bc.bitmap[k]);
+    }
+    return answer + Long.bitCount(bc.bitmap[word] << (63 - (x & 63)));
+  }
+
+  private short select(int index, Container c, int j) {
+    if (!(c instanceof BitmapContainer)) {
+      return c.select(j);
+    }
+    final BitmapContainer bc = (BitmapContainer) c;
+    final int[] samples = rankSamples(index, bc);
+    // last sample not exceeding j
+    int low = 0;
+    int high = samples.length - 1;
+    while (low < high) {
+      final int mid = (low + high + 1) >>> 1;
+      if (samples[mid] <= j) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    int leftover = j - samples[low];
+    for (int k = low * SAMPLE_WORDS; k < bc.bitmap.length; ++k) {
+      final int w = Long.bitCount(bc.bitmap[k]);
+      if (w > leftover) {
+        return (short) (k * 64 + Util.select(bc.bitmap[k], leftover));
+      }
+      leftover -= w;
+    }
+    throw new IllegalArgumentException("Insufficient cardinality.");
+  }
+
+  @Override
+  public long getLongCardinality() {
+    preComputeCardinalities();
+    final int size = cumulatedCardinalities.length;
+    return size == 0 ? 0 : cumulatedCardinalities[size - 1];
+  }
+
+  @Override
+  public long rankLong(int x) {
+    preComputeCardinalities();
+    final int index = Util.unsignedBinarySearch(highLowContainer.keys, 0, highLowContainer.size(),
+        Util.highbits(x));
+    if (index < 0) {
+      final int before = -index - 1;
+      return before == 0 ? 0 : cumulatedCardinalities[before - 1];
+    }
+    final long size = index == 0 ? 0 : cumulatedCardinalities[index - 1];
+    return size + rank(index, highLowContainer.getContainerAtIndex(index), Util.lowbits(x));
+  }
+
+  @Override
+  public int select(int j) {
+    preComputeCardinalities();
+    final long target = j & 0xFFFFFFFFL;
+    // first container whose cumulated cardinality exceeds j
+    int low = 0;
+    int high = cumulatedCardinalities.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (cumulatedCardinalities[mid] > target) {
+        high = mid;
+      } else {
+        low = mid + 1;
+      }
+    }
+    if (low == cumulatedCardinalities.length) {
+      throw new IllegalArgumentException(
+          "select " + j + " when the cardinality is " + this.getCardinality());
+    }
+    final long before = low == 0 ? 0 : cumulatedCardinalities[low - 1];
+    final int keycontrib = highLowContainer.getKeyAtIndex(low) << 16;
+    final int lowcontrib = Util.toIntUnsigned(
+        select(low, highLowContainer.getContainerAtIndex(low), (int) (target - before)));
+    return lowcontrib + keycontrib;
+  }
+
+  @Override
+  public FastRankRoaringBitmap clone() {
+    return (FastRankRoaringBitmap) super.clone();
+  }
+
+  // all methods modifying the bitmap discard the cache
+
+  @Override
+  public void add(final int x) {
+    resetCache();
+    super.add(x);
+  }
+
+  @Override
+  public void add(final int... dat) {
+    resetCache();
+    super.add(dat);
+  }
+
+  @Override
+  public void addMany(final int... dat) {
+    resetCache();
+    super.addMany(dat);
+  }
+
+  @Override
+  public void add(final long rangeStart, final long rangeEnd) {
+    resetCache();
+    super.add(rangeStart, rangeEnd);
+  }
+
+  @Override
+  public void and(final RoaringBitmap x2) {
+    resetCache();
+    super.and(x2);
+  }
+
+  @Override
+  public void andNot(final RoaringBitmap x2) {
+    resetCache();
+    super.andNot(x2);
+  }
+
+  @Override
+  public boolean checkedAdd(final int x) {
+    resetCache();
+    return super.checkedAdd(x);
+  }
+
+  @Override
+  public boolean checkedRemove(final int x) {
+    resetCache();
+    return super.checkedRemove(x);
+  }
+
+  @Override
+  public void clear() {
+    resetCache();
+    super.clear();
+  }
+
+  @Override
+  public void deserialize(DataInput in) throws IOException {
+    resetCache();
+    super.deserialize(in);
+  }
+
+  @Override
+  public void flip(final int x) {
+    resetCache();
+    super.flip(x);
+  }
+
+  @Override
+  public void flip(final long rangeStart, final long rangeEnd) {
+    resetCache();
+    super.flip(rangeStart, rangeEnd);
+  }
+
+  @Override
+  public Iterator<Integer> iterator() {
+    final Iterator<Integer> it = super.iterator();
+    return new Iterator<Integer>() {
+      @Override
+      public boolean hasNext() {
+        return it.hasNext();
+      }
+
+      @Override
+      public Integer next() {
+        return it.next();
+      }
+
+      @Override
+      public void remove() {
+        resetCache();
+        it.remove();
+      }
+    };
+  }
+
+  @Override
+  protected void lazyor(final RoaringBitmap x2) {
+    resetCache();
+    super.lazyor(x2);
+  }
+
+  @Override
+  protected void naivelazyor(RoaringBitmap x2) {
+    resetCache();
+    super.naivelazyor(x2);
+  }
+
+  @Override
+  public void or(final RoaringBitmap x2) {
+    resetCache();
+    super.or(x2);
+  }
+
+  @Override
+  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    resetCache();
+    super.readExternal(in);
+  }
+
+  @Override
+  public void remove(final int x) {
+    resetCache();
+    super.remove(x);
+  }
+
+  @Override
+  public void remove(final long rangeStart, final long rangeEnd) {
+    resetCache();
+    super.remove(rangeStart, rangeEnd);
+  }
+
+  @Override
+  public boolean removeRunCompression() {
+    resetCache();
+    return super.removeRunCompression();
+  }
+
+  @Override
+  protected void repairAfterLazy() {
+    resetCache();
+    super.repairAfterLazy();
+  }
+
+  @Override
+  public boolean runOptimize() {
+    resetCache();
+    return super.runOptimize();
+  }
+
+  @Override
+  public void xor(final RoaringBitmap x2) {
+    resetCache();
+    super.xor(x2);
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+import java.util.Arrays;
+
+/**
+ * A bottom-k MinHash sketch of a set of integers: the k smallest hashes of its values. Two
+ * sketches estimate the Jaccard index of their sets, and the cardinalities of their union and of
+ * their intersection, in time proportional to k, whatever the size of the sets. A query planner
+ * can use them to order its operands without computing any intersection. The standard error of
+ * the estimates is about 1 / sqrt(k).
+ *
+ * A sketch is either computed from a bitmap, in a single pass over its values, or maintained
+ * alongside a bitmap by adding each value to both. Values cannot be removed from a sketch. The
+ * estimates are exact as long as the sets hold fewer than k values.
+ *
+ * <pre>
+ * {@code
+ *      MinHashSketch s1 = MinHashSketch.of(rb1);
+ *      MinHashSketch s2 = MinHashSketch.of(rb2);
+ *      double jaccard = MinHashSketch.jaccard(s1, s2);
+ *      double intersection = MinHashSketch.intersectionCardinality(s1, s2);
+ * }
+ * </pre>
+ *
+ * This class is not thread-safe.
+ */
+public final class MinHashSketch {
+
+  /**
+   * Number of hashes kept by default, for a standard error of about 6%.
+   */
+  public static final int DEFAULT_SIZE = 256;
+
+  // 2^63, the hashes are non-negative longs
+  private static final double HASH_RANGE = 0x1p63;
+
+  private final int k;
+
+  // the smallest hashes, distinct and sorted
+  private final long[] hashes;
+
+  private int size = 0;
+
+  /**
+   * Create an empty sketch keeping {@link #DEFAULT_SIZE} hashes.
+   */
+  public MinHashSketch() {
+    this(DEFAULT_SIZE);
+  }
+
+  /**
+   * Create an empty sketch.
+   *
+   * @param k number of hashes to keep
+   */
+  public MinHashSketch(final int k) {
+    if (k < 2) {
+      throw new IllegalArgumentException("k must be at least 2: " + k);
+    }
+    this.k = k;
+    this.hashes = new long[k];
+  }
+
+  /**
+   * Compute the sketch of a bitmap, keeping {@link #DEFAULT_SIZE} hashes.
+   *
+   * @param bitmap the bitmap, not modified
+   * @return the sketch of its values
+   */
+  public static MinHashSketch of(final ImmutableBitmapDataProvider bitmap) {
+    return of(bitmap, DEFAULT_SIZE);
+  }
+
+  /**
+   * Compute the sketch of a bitmap.
+   *
+   * @param bitmap the bitmap, not modified
+   * @param k number of hashes to keep
+   * @return the sketch of its values
+   */
+  public static MinHashSketch of(final ImmutableBitmapDataProvider bitmap, final int k) {
+    final MinHashSketch answer = new MinHashSketch(k);
+    bitmap.forEach(new IntConsumer() {
+      @Override
+      public void accept(int value) {
+        answer.add(value);
+      }
+    });
+    return answer;
+  }
+
+  /**
+   * Add a value to the sketch. Adding a value again has no effect.
+   *
+   * @param x the value
+   */
+  public void add(final int x) {
+    final long h = hash(x);
+    if (size == k && h >= hashes[k - 1]) {
+      return;
+    }
+    final int index = Arrays.binarySearch(hashes, 0, size, h);
+    if (index >= 0) {
+      return;
+    }
+    final int insertion = -index - 1;
+    final int moved = (size == k ? k - 1 : size) - insertion;
+    System.arraycopy(hashes, insertion, hashes, insertion + 1, moved);
+    hashes[insertion] = h;
+    if (size < k) {
+      ++size;
+    }
+  }
+
+  /**
+   * Number of hashes this sketch keeps.
+   *
+   * @return k
+   */
+  public int getK() {
+    return k;
+  }
+
+  /**
+   * Estimate the number of distinct values added to the sketch.
+   *
+   * @return the estimated cardinality, exact when it is below k
+   */
+  public double cardinality() {
+    return estimate(hashes, size, k);
+  }
+
+  /**
+   * Estimate the Jaccard index of the sets of two sketches: the cardinality of their intersection
+   * divided by the cardinality of their union, 1 when both are empty. When the sketches keep a
+   * different number of hashes, the smallest number is used.
+   *
+   * @param s1 first sketch
+   * @param s2 other sketch
+   * @return a value from 0 to 1
+   */
+  public static double jaccard(final MinHashSketch s1, final MinHashSketch s2) {
+    final long[] union = new long[Math.min(s1.k, s2.k)];
+    final int length = union(s1, s2, union);
+    return length == 0 ? 1 : (double) common(s1, s2, union, length) / length;
+  }
+
+  /**
+   * Estimate the cardinality of the union of the sets of two sketches.
+   *
+   * @param s1 first sketch
+   * @param s2 other sketch
+   * @return the estimated cardinality
+   */
+  public static double unionCardinality(final MinHashSketch s1, final MinHashSketch s2) {
+    final long[] union = new long[Math.min(s1.k, s2.k)];
+    return estimate(union, union(s1, s2, union), union.length);
+  }
+
+  /**
+   * Estimate the cardinality of the intersection of the sets of two sketches, as their Jaccard
+   * index times the cardinality of their union.
+   *
+   * @param s1 first sketch
+   * @param s2 other sketch
+   * @return the estimated cardinality
+   */
+  public static double intersectionCardinality(final MinHashSketch s1, final MinHashSketch s2) {
+    final long[] union = new long[Math.min(s1.k, s2.k)];
+    final int length = union(s1, s2, union);
+    if (length == 0) {
+      return 0;
+    }
+    return estimate(union, length, union.length) * common(s1, s2, union, length) / length;
+  }
+
+  /**
+   * Merge another sketch into this one, which then describes the union of both sets. The other
+   * sketch must keep at least as many hashes as this one.
+   *
+   * @param other the other sketch, not modified
+   */
+  public void merge(final MinHashSketch other) {
+    if (other.k < k) {
+      throw new IllegalArgumentException("cannot merge a sketch of " + other.k
+          + " hashes into a sketch of " + k + " hashes");
+    }
+    final long[] union = new long[k];
+    size = union(this, other, union);
+    System.arraycopy(union, 0, hashes, 0, size);
+  }
+
+  // the smallest hashes of both sketches, distinct and sorted, go in union; returns their number,
+  // which is below union.length only when both sketches hold all the hashes of their sets
+  private static int union(final MinHashSketch s1, final MinHashSketch s2, final long[] union) {
+    final int size1 = Math.min(s1.size, union.length);
+    final int size2 = Math.min(s2.size, union.length);
+    int pos1 = 0;
+    int pos2 = 0;
+    int length = 0;
+    while (length < union.length && (pos1 < size1 || pos2 < size2)) {
+      if (pos2 == size2 || (pos1 < size1 && s1.hashes[pos1] < s2.hashes[pos2])) {
+        union[length++] = s1.hashes[pos1++];
+      } else if (pos1 == size1 || s2.hashes[pos2] < s1.hashes[pos1]) {
+        union[length++] = s2.hashes[pos2++];
+      } else {
+        union[length++] = s1.hashes[pos1++];
+        ++pos2;
+      }
+    }
+    return length;
+  }
+
+  // number of the smallest hashes of the union found in both sketches
+  private static int common(final MinHashSketch s1, final MinHashSketch s2, final long[] union,
+      final int length) {
+    int answer = 0;
+    for (int i = 0; i < length; ++i) {
+      if (Arrays.binarySearch(s1.hashes, 0, s1.size, union[i]) >= 0
+          && Arrays.binarySearch(s2.hashes, 0, s2.size, union[i]) >= 0) {
+        ++answer;
+      }
+    }
+    return answer;
+  }
+
+  // exact below k hashes, otherwise (k - 1) divided by the k-th smallest hash over the hash range
+  private static double estimate(final long[] hashes, final int size, final int k) {
+    if (size < k) {
+      return size;
+    }
+    return (k - 1) * HASH_RANGE / (hashes[k - 1] + 1.0);
+  }
+
+  // the finalizer of SplitMix64, a bijection, keeping 63 bits so that hashes compare as signed
+  static long hash(final int x) {
+    long z = (x & 0xFFFFFFFFL) + 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return (z ^ (z >>> 31)) >>> 1;
+  }
+
+  @Override
+  public String toString() {
+    return "MinHashSketch{k=" + k + ", cardinality=" + cardinality() + "}";
+  }
+}
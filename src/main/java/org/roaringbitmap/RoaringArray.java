@@ -210,6 +210,15 @@ public final class RoaringArray implements Cloneable, Externalizable {
     return sa;
   }
 
+  // copies the keys and the references to the containers, the containers are shared
+  RoaringArray shallowCopy() {
+    final RoaringArray sa = new RoaringArray();
+    sa.keys = Arrays.copyOf(this.keys, this.size + 1);
+    sa.values = Arrays.copyOf(this.values, this.size + 1);
+    sa.size = this.size;
+    return sa;
+  }
+
   protected void copyRange(int begin, int end, int newBegin) {
     // assuming begin <= end and newBegin < begin
     final int range = end - begin;
@@ -6,6 +6,7 @@ package org.roaringbitmap;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 
 import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
@@ -166,7 +167,10 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
 
   private static final long serialVersionUID = 6L;
 
-  private static void rangeSanityCheck(final long rangeStart, final long rangeEnd) {
+  // below this many values, addMany falls back to add
+  private static final int ADD_MANY_THRESHOLD = 1024;
+
+  static void rangeSanityCheck(final long rangeStart, final long rangeEnd) {
     if (rangeStart < 0 || rangeStart > (1L << 32)-1) {
       throw new IllegalArgumentException("rangeStart="+ rangeStart
                                          +" should be in [0, 0xffffffff]");
@@ -366,7 +370,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
    * Set all the specified values  to true. This can be expected to be slightly
    * faster than calling "add" repeatedly. The provided integers values don't
    * have to be in sorted order, but it may be preferable to sort them from a performance point of
-   * view.
+   * view. For large batches of unsorted values, consider {@link #addMany(int...)}.
    *
    * @param dat set values
    */
@@ -424,6 +428,91 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     }
   }
 
+  /**
+   * Set all the specified values to true. The values are first partitioned according to their 16
+   * most significant bits, so that each container is built at once instead of being grown one
+   * value at a time as with {@link #add(int...)}. This is preferable for large batches of unsorted
+   * values. The provided array is not modified.
+   *
+   * @param dat set values
+   */
+  public void addMany(final int... dat) {
+    if (dat.length < ADD_MANY_THRESHOLD) {
+      add(dat);
+      return;
+    }
+    // counting sort on the 16 most significant bits
+    final int[] offsets = new int[(1 << 16) + 1];
+    for (int k = 0; k < dat.length; ++k) {
+      offsets[(dat[k] >>> 16) + 1]++;
+    }
+    for (int key = 0; key < (1 << 16); ++key) {
+      offsets[key + 1] += offsets[key];
+    }
+    final int[] partitioned = new int[dat.length];
+    for (int k = 0; k < dat.length; ++k) {
+      partitioned[offsets[dat[k] >>> 16]++] = dat[k];
+    }
+    // offsets[key] is now the end of the partition of key, merge with the existing containers
+    final RoaringArray answer = new RoaringArray();
+    final int length1 = highLowContainer.size();
+    int pos1 = 0;
+    int begin = 0;
+    for (int key = 0; key < (1 << 16); ++key) {
+      final int end = offsets[key];
+      if (begin == end) {
+        continue;
+      }
+      final Container c = partitionToContainer(partitioned, begin, end);
+      begin = end;
+      while (pos1 < length1 && Util.toIntUnsigned(highLowContainer.getKeyAtIndex(pos1)) < key) {
+        answer.append(highLowContainer.getKeyAtIndex(pos1),
+            highLowContainer.getContainerAtIndex(pos1));
+        ++pos1;
+      }
+      if (pos1 < length1 && Util.toIntUnsigned(highLowContainer.getKeyAtIndex(pos1)) == key) {
+        answer.append((short) key, highLowContainer.getContainerAtIndex(pos1).ior(c));
+        ++pos1;
+      } else {
+        answer.append((short) key, c);
+      }
+    }
+    answer.append(highLowContainer, pos1, length1);
+    highLowContainer = answer;
+  }
+
+  // builds a container from values sharing the same 16 most significant bits, may reorder them
+  private static Container partitionToContainer(final int[] values, final int begin,
+      final int end) {
+    if (end - begin > ArrayContainer.DEFAULT_MAX_SIZE) {
+      final BitmapContainer bc = new BitmapContainer();
+      for (int k = begin; k < end; ++k) {
+        final int x = values[k];
+        bc.bitmap[(x & 0xFFFF) >>> 6] |= 1L << x;
+      }
+      bc.computeCardinality();
+      if (bc.getCardinality() <= ArrayContainer.DEFAULT_MAX_SIZE) {
+        return bc.toArrayContainer();
+      } else if (bc.isFull()) {
+        return RunContainer.full();
+      }
+      return bc;
+    }
+    // values sharing their most significant bits sort like their least significant bits
+    Arrays.sort(values, begin, end);
+    final short[] content = new short[end - begin];
+    int card = 0;
+    int previous = -1;
+    for (int k = begin; k < end; ++k) {
+      final int low = values[k] & 0xFFFF;
+      if (low != previous) {
+        content[card++] = (short) low;
+        previous = low;
+      }
+    }
+    return new ArrayContainer(card, content);
+  }
+
   /**
    * Generate a bitmap with the specified values set to true. The provided integers values don't
    * have to be in sorted order, but it may be preferable to sort them from a performance point of
@@ -564,6 +653,48 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     return false;
   }
 
+  /**
+   * Checks whether the intersection of the two bitmaps holds at least limit values. Unlike
+   * andCardinality, this stops scanning the containers as soon as the limit is reached, so
+   * checking an overlap against a small threshold is much cheaper than counting it.
+   *
+   * @param x1 first bitmap
+   * @param x2 other bitmap
+   * @param limit minimal cardinality of the intersection
+   * @return true if the intersection holds at least limit values
+   */
+  public static boolean andCardinalityAtLeast(final RoaringBitmap x1, final RoaringBitmap x2,
+      final long limit) {
+    if (limit <= 0) {
+      return true;
+    } else if (limit == 1) {
+      return intersects(x1, x2);
+    }
+    long remaining = limit;
+    final int length1 = x1.highLowContainer.size(), length2 = x2.highLowContainer.size();
+    int pos1 = 0, pos2 = 0;
+
+    while (pos1 < length1 && pos2 < length2) {
+      final short s1 = x1.highLowContainer.getKeyAtIndex(pos1);
+      final short s2 = x2.highLowContainer.getKeyAtIndex(pos2);
+      if (s1 == s2) {
+        final Container c1 = x1.highLowContainer.getContainerAtIndex(pos1);
+        final Container c2 = x2.highLowContainer.getContainerAtIndex(pos2);
+        remaining -= c1.andCardinality(c2, (int) Math.min(remaining, Integer.MAX_VALUE));
+        if (remaining <= 0) {
+          return true;
+        }
+        ++pos1;
+        ++pos2;
+      } else if (Util.compareUnsigned(s1, s2) < 0) { // s1 < s2
+        pos1 = x1.highLowContainer.advanceUntil(s2, pos1);
+      } else { // s1 > s2
+        pos2 = x2.highLowContainer.advanceUntil(s1, pos2);
+      }
+    }
+    return false;
+  }
+
 
   // important: inputs should not have been computed lazily
   protected static RoaringBitmap lazyor(final RoaringBitmap x1, final RoaringBitmap x2) {
@@ -1037,9 +1168,16 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
       final long rangeStart, final long rangeEnd) {
     rangeSanityCheck(rangeStart, rangeEnd);
 
-    Iterator<RoaringBitmap> bitmapsIterator;
-    bitmapsIterator = selectRangeWithoutCopy(bitmaps, rangeStart, rangeEnd);
-    return FastAggregation.and(bitmapsIterator);
+    final RoaringBitmap answer = new RoaringBitmap();
+    if (!bitmaps.hasNext()) {
+      return answer;
+    }
+    answer.mergeRange((RoaringBitmap) bitmaps.next(), rangeStart, rangeEnd, false);
+    // the answer lies within the range, so the other bitmaps need not be clipped
+    while (bitmaps.hasNext() && !answer.isEmpty()) {
+      answer.and((RoaringBitmap) bitmaps.next());
+    }
+    return answer;
   }
 
   /*
@@ -1121,9 +1259,10 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
       long rangeStart, long rangeEnd) {
     rangeSanityCheck(rangeStart, rangeEnd);
 
-    RoaringBitmap rb1 = selectRangeWithoutCopy(x1, rangeStart, rangeEnd);
-    RoaringBitmap rb2 = selectRangeWithoutCopy(x2, rangeStart, rangeEnd);
-    return andNot(rb1, rb2);
+    final RoaringBitmap answer = new RoaringBitmap();
+    answer.mergeRange(x1, rangeStart, rangeEnd, false);
+    answer.andNot(x2);
+    return answer;
   }
 
   /**
@@ -1627,6 +1766,96 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     return answer;
   }
 
+  /**
+   * Write the values of rank offset, offset + 1, ..., offset + count - 1 (in increasing order)
+   * into the provided array. Containers before the requested page are skipped using their
+   * cardinality, and only the values of the page are decoded. Ranks start at zero.
+   *
+   * @param offset rank of the first value to write (zero for the smallest value)
+   * @param count maximal number of values to write
+   * @param out array receiving the values, starting at index zero
+   * @return the number of values written, less than count if the bitmap has fewer values
+   */
+  public int slice(long offset, int count, int[] out) {
+    checkSliceArguments(offset, count, out);
+    final int size = highLowContainer.size();
+    int i = 0;
+    long skip = offset;
+    while (i < size && highLowContainer.getContainerAtIndex(i).getCardinality() <= skip) {
+      skip -= highLowContainer.getContainerAtIndex(i).getCardinality();
+      ++i;
+    }
+    int written = 0;
+    for (; i < size && written < count; ++i) {
+      final Container c = highLowContainer.getContainerAtIndex(i);
+      final int start = (int) skip;
+      final int end = Math.min(c.getCardinality(), start + count - written);
+      final int mask = Util.toIntUnsigned(highLowContainer.getKeyAtIndex(i)) << 16;
+      fillRange(c, start, end, mask, out, written);
+      written += end - start;
+      skip = 0;
+    }
+    return written;
+  }
+
+  /**
+   * Write the values of reverse rank offset, offset + 1, ..., offset + count - 1 (in decreasing
+   * order) into the provided array: the reverse rank of the largest value is zero. Containers
+   * after the requested page are skipped using their cardinality, and only the values of the
+   * page are decoded.
+   *
+   * @param offset reverse rank of the first value to write (zero for the largest value)
+   * @param count maximal number of values to write
+   * @param out array receiving the values, starting at index zero
+   * @return the number of values written, less than count if the bitmap has fewer values
+   */
+  public int reverseSlice(long offset, int count, int[] out) {
+    checkSliceArguments(offset, count, out);
+    int i = highLowContainer.size() - 1;
+    long skip = offset;
+    while (i >= 0 && highLowContainer.getContainerAtIndex(i).getCardinality() <= skip) {
+      skip -= highLowContainer.getContainerAtIndex(i).getCardinality();
+      --i;
+    }
+    int written = 0;
+    for (; i >= 0 && written < count; --i) {
+      final Container c = highLowContainer.getContainerAtIndex(i);
+      final int end = c.getCardinality() - (int) skip;
+      final int start = Math.max(0, end - (count - written));
+      final int mask = Util.toIntUnsigned(highLowContainer.getKeyAtIndex(i)) << 16;
+      fillRange(c, start, end, mask, out, written);
+      Util.reverse(out, written, written + end - start);
+      written += end - start;
+      skip = 0;
+    }
+    return written;
+  }
+
+  private static void checkSliceArguments(long offset, int count, int[] out) {
+    if (offset < 0) {
+      throw new IllegalArgumentException("negative offset " + offset);
+    }
+    if (count < 0 || count > out.length) {
+      throw new IllegalArgumentException(
+          "count " + count + " does not fit in an array of length " + out.length);
+    }
+  }
+
+  // writes the values of rank start, ..., end - 1 within the container at out[pos], ...
+  private static void fillRange(Container c, int start, int end, int mask, int[] out, int pos) {
+    if (start == 0 && end == c.getCardinality()) {
+      c.fillLeastSignificant16bits(out, pos, mask);
+      return;
+    }
+    final PeekableShortIterator it = c.getShortIterator();
+    if (start > 0) {
+      it.advanceIfNeeded(c.select(start));
+    }
+    for (int k = pos; k < pos + end - start; ++k) {
+      out[k] = it.nextAsInt() | mask;
+    }
+  }
+
   /**
    * In-place bitwise OR (union) operation. The current bitmap is modified.
    *
@@ -1690,9 +1919,12 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
       final long rangeStart, final long rangeEnd) {
     rangeSanityCheck(rangeStart, rangeEnd);
 
-    Iterator<RoaringBitmap> bitmapsIterator;
-    bitmapsIterator = selectRangeWithoutCopy(bitmaps, rangeStart, rangeEnd);
-    return or(bitmapsIterator);
+    final RoaringBitmap answer = new RoaringBitmap();
+    while (bitmaps.hasNext()) {
+      answer.mergeRange((RoaringBitmap) bitmaps.next(), rangeStart, rangeEnd, false);
+    }
+    answer.repairAfterLazy();
+    return answer;
   }
 
 
@@ -1730,8 +1962,10 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
       short key = this.highLowContainer.getKeyAtIndex(i);
       if (Util.compareUnsigned(key, xhigh) < 0) {
         size += this.highLowContainer.getContainerAtIndex(i).getCardinality();
-      } else {
+      } else if (key == xhigh) {
         return size + this.highLowContainer.getContainerAtIndex(i).rank(Util.lowbits(x));
+      } else {
+        return size;
       }
     }
     return size;
@@ -2030,103 +2264,64 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
   }
 
   /**
-   * Return new iterator with only values from rangeStart (inclusive) to rangeEnd (exclusive)
+   * Merge the values of x2 within [rangeStart, rangeEnd) into this bitmap, either with a lazy
+   * union (repairAfterLazy() must be called afterward) or with a symmetric difference. The
+   * containers of x2 are visited in place between the key indexes of the range, and only the two
+   * boundary containers are clipped.
    *
-   * @param bitmaps bitmaps iterator
+   * @param x2 other bitmap, not modified
    * @param rangeStart inclusive
    * @param rangeEnd exclusive
-   * @return new iterator of bitmaps
+   * @param xor whether to compute the symmetric difference rather than the union
    */
-  private static Iterator<RoaringBitmap> selectRangeWithoutCopy(final Iterator bitmaps,
-      final long rangeStart, final long rangeEnd) {
-    Iterator<RoaringBitmap> bitmapsIterator;
-    bitmapsIterator = new Iterator<RoaringBitmap>() {
-      @Override
-      public boolean hasNext() {
-        return bitmaps.hasNext();
-      }
-
-      @Override
-      public RoaringBitmap next() {
-        RoaringBitmap next = (RoaringBitmap) bitmaps.next();
-        return selectRangeWithoutCopy(next, rangeStart, rangeEnd);
-      }
-
-      @Override
-      public void remove() {
-        throw new UnsupportedOperationException("Remove not supported");
-      }
-    };
-    return bitmapsIterator;
-  }
-
-
-  /**
-   *
-   * Extracts the values in the specified range, rangeStart (inclusive) and rangeEnd (exclusive)
-   * while avoiding copies as much as possible.
-   *
-   * @param rb input bitmap
-   * @param rangeStart inclusive
-   * @param rangeEnd exclusive
-   * @return new bitmap
-   */
-
-  // had formerly failed if rangeEnd==0
-  private static RoaringBitmap selectRangeWithoutCopy(RoaringBitmap rb, final long rangeStart,
-      final long rangeEnd) {
+  private void mergeRange(final RoaringBitmap x2, final long rangeStart, final long rangeEnd,
+      final boolean xor) {
+    if (rangeEnd <= rangeStart) {
+      return;
+    }
     final int hbStart = Util.toIntUnsigned(Util.highbits(rangeStart));
     final int lbStart = Util.toIntUnsigned(Util.lowbits(rangeStart));
     final int hbLast = Util.toIntUnsigned(Util.highbits(rangeEnd - 1));
     final int lbLast = Util.toIntUnsigned(Util.lowbits(rangeEnd - 1));
-    RoaringBitmap answer = new RoaringBitmap();
-
-    assert(rangeStart >= 0 && rangeEnd >= 0);
-
-    if (rangeEnd <= rangeStart) {
-      return answer;
-    }
-
-    if (hbStart == hbLast) {
-      final int i = rb.highLowContainer.getIndex((short) hbStart);
-      if (i >= 0) {
-        final Container c = rb.highLowContainer.getContainerAtIndex(i).remove(0, lbStart)
-            .iremove(lbLast + 1, Util.maxLowBitAsInteger() + 1);
-        if (c.getCardinality() > 0) {
-          answer.highLowContainer.append((short) hbStart, c);
-        }
+    int begin = x2.highLowContainer.getIndex((short) hbStart);
+    if (begin < 0) {
+      begin = -begin - 1;
+    }
+    int end = x2.highLowContainer.getIndex((short) hbLast);
+    end = end < 0 ? -end - 1 : end + 1;
+    int pos1 = -1;
+    for (int pos2 = begin; pos2 < end; ++pos2) {
+      final short s2 = x2.highLowContainer.getKeyAtIndex(pos2);
+      final Container c2 = x2.highLowContainer.getContainerAtIndex(pos2);
+      Container c = c2;
+      if (Util.toIntUnsigned(s2) == hbStart && lbStart > 0) {
+        c = c.remove(0, lbStart);
       }
-      return answer;
-    }
-    int ifirst = rb.highLowContainer.getIndex((short) hbStart);
-    int ilast = rb.highLowContainer.getIndex((short) hbLast);
-    if (ifirst >= 0) {
-      final Container c = rb.highLowContainer.getContainerAtIndex(ifirst).remove(0, lbStart);
-      if (c.getCardinality() > 0) {
-        answer.highLowContainer.append((short) hbStart, c);
+      if (Util.toIntUnsigned(s2) == hbLast && lbLast < Util.maxLowBitAsInteger()) {
+        c = c == c2 ? c.remove(lbLast + 1, Util.maxLowBitAsInteger() + 1)
+            : c.iremove(lbLast + 1, Util.maxLowBitAsInteger() + 1);
       }
-    }
-
-    // revised to loop on ints
-    for (int hb = hbStart + 1; hb <= hbLast - 1; ++hb) {
-      final int i = rb.highLowContainer.getIndex((short)hb);
-      final int j = answer.highLowContainer.getIndex((short) hb);
-      assert j < 0;
-
-      if (i >= 0) {
-        final Container c = rb.highLowContainer.getContainerAtIndex(i);
-        answer.highLowContainer.insertNewKeyValueAt(-j - 1, (short)hb, c);
+      if (c.getCardinality() == 0) {
+        continue;
       }
-    }
-
-    if (ilast >= 0) {
-      final Container c = rb.highLowContainer.getContainerAtIndex(ilast).remove(lbLast + 1,
-          Util.maxLowBitAsInteger() + 1);
-      if (c.getCardinality() > 0) {
-        answer.highLowContainer.append((short) hbLast, c);
+      pos1 = highLowContainer.advanceUntil(s2, pos1);
+      if (pos1 < highLowContainer.size() && highLowContainer.getKeyAtIndex(pos1) == s2) {
+        final Container c1 = highLowContainer.getContainerAtIndex(pos1);
+        if (!xor) {
+          highLowContainer.setContainerAtIndex(pos1, c1.lazyIOR(c));
+        } else {
+          final Container x = c1.ixor(c);
+          if (x.getCardinality() > 0) {
+            highLowContainer.setContainerAtIndex(pos1, x);
+          } else {
+            highLowContainer.removeAtIndex(pos1--);
+          }
+        }
+      } else {
+        // boundary containers were already copied by the clipping
+        highLowContainer.insertNewKeyValueAt(pos1, s2, c == c2 ? c2.clone() : c);
       }
     }
-    return answer;
   }
 
 
@@ -2269,9 +2464,12 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
   public static RoaringBitmap xor(@SuppressWarnings("rawtypes") final Iterator bitmaps,
       final long rangeStart, final long rangeEnd) {
     rangeSanityCheck(rangeStart, rangeEnd);
-    Iterator<RoaringBitmap> bitmapsIterator;
-    bitmapsIterator = selectRangeWithoutCopy(bitmaps, rangeStart, rangeEnd);
-    return FastAggregation.xor(bitmapsIterator);
+
+    final RoaringBitmap answer = new RoaringBitmap();
+    while (bitmaps.hasNext()) {
+      answer.mergeRange((RoaringBitmap) bitmaps.next(), rangeStart, rangeEnd, true);
+    }
+    return answer;
   }
 
   /**
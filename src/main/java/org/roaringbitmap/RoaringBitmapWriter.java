@@ -0,0 +1,169 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+import java.util.Arrays;
+
+/**
+ * Builds a RoaringBitmap from integers provided in increasing (unsigned) order, such as the row
+ * ids produced by a sorted scan.
+ *
+ * The values of the current 16-bit chunk are buffered in a scratch bitset. When a value from a
+ * later chunk arrives (or when {@link #flush()} is called), the chunk is converted to the most
+ * compact container (array, bitmap or run) and appended to the bitmap without any search. Since
+ * the values arrive in order, the number of runs of the chunk is counted as they are added, and
+ * choosing the container does not require scanning the chunk.
+ *
+ * <pre>
+ * {@code
+ *      RoaringBitmapWriter writer = new RoaringBitmapWriter();
+ *      for (int rowId : sortedRowIds) {
+ *        writer.add(rowId);
+ *      }
+ *      RoaringBitmap rb = writer.get();
+ * }
+ * </pre>
+ *
+ * The resulting bitmap is already run-optimized. This class is not thread-safe.
+ */
+public final class RoaringBitmapWriter {
+
+  private final RoaringBitmap underlying;
+
+  private long[] chunk = new long[BitmapContainer.MAX_CAPACITY / 64];
+
+  private int cardinality = 0;
+
+  // number of runs of consecutive values in the chunk
+  private int numRuns = 0;
+
+  // unsigned 16 most significant bits of the buffered values
+  private int currentKey = 0;
+
+  // words of the chunk that may be non-zero
+  private int minWord = 0;
+
+  private int maxWord = -1;
+
+  // last value added, as an unsigned integer (-1 when nothing was added)
+  private long last = -1;
+
+  /**
+   * Create a writer appending to a new, empty bitmap.
+   */
+  public RoaringBitmapWriter() {
+    this.underlying = new RoaringBitmap();
+  }
+
+  /**
+   * Add the value to the bitmap. Values must be provided in increasing unsigned order, repeated
+   * values are allowed.
+   *
+   * @param x integer value
+   */
+  public void add(final int x) {
+    final long ux = x & 0xFFFFFFFFL;
+    if (ux < last) {
+      throw new IllegalArgumentException(
+          "Values must be added in increasing order, " + ux + " was added after " + last);
+    }
+    if (ux == last) {
+      return;
+    }
+    final boolean extendsRun = ux == last + 1;
+    last = ux;
+    final int key = (int) (ux >>> 16);
+    if (key != currentKey) {
+      flush();
+      currentKey = key;
+    }
+    if (cardinality == 0 || !extendsRun) {
+      ++numRuns;
+    }
+    final int lowbits = x & 0xFFFF;
+    final int index = lowbits >>> 6;
+    chunk[index] |= 1L << lowbits;
+    ++cardinality;
+    if (index > maxWord) {
+      if (maxWord < 0) {
+        minWord = index;
+      }
+      maxWord = index;
+    }
+  }
+
+  /**
+   * Add all the specified values to the bitmap. Values must be provided in increasing unsigned
+   * order, including with respect to the values previously added.
+   *
+   * @param dat set values
+   */
+  public void add(final int... dat) {
+    for (int k = 0; k < dat.length; ++k) {
+      add(dat[k]);
+    }
+  }
+
+  /**
+   * Append the buffered chunk, if any, to the bitmap. It is not necessary to call this method
+   * before {@link #get()}.
+   */
+  public void flush() {
+    if (cardinality == 0) {
+      return;
+    }
+    final Container c = toContainer();
+    final RoaringArray ra = underlying.highLowContainer;
+    final int lastIndex = ra.size() - 1;
+    if (lastIndex >= 0 && ra.getKeyAtIndex(lastIndex) == (short) currentKey) {
+      // the chunk was flushed before being complete
+      ra.setContainerAtIndex(lastIndex, ra.getContainerAtIndex(lastIndex).ior(c));
+    } else {
+      ra.append((short) currentKey, c);
+    }
+    cardinality = 0;
+    numRuns = 0;
+    minWord = 0;
+    maxWord = -1;
+  }
+
+  /**
+   * Flush the buffered values and return the bitmap. Values added afterwards are appended to the
+   * same bitmap.
+   *
+   * @return the bitmap holding all values added so far
+   */
+  public RoaringBitmap get() {
+    flush();
+    return underlying;
+  }
+
+  // converts the chunk to a container, leaving the chunk cleared
+  private Container toContainer() {
+    final int sizeAsRunContainer = RunContainer.serializedSizeInBytes(numRuns);
+    if (cardinality <= ArrayContainer.DEFAULT_MAX_SIZE && 2 * cardinality <= sizeAsRunContainer) {
+      final short[] content = new short[cardinality];
+      int pos = 0;
+      for (int k = minWord; k <= maxWord; ++k) {
+        long w = chunk[k];
+        while (w != 0) {
+          content[pos++] = (short) (k * 64 + Long.numberOfTrailingZeros(w));
+          w &= w - 1;
+        }
+      }
+      Arrays.fill(chunk, minWord, maxWord + 1, 0L);
+      return new ArrayContainer(content);
+    }
+    final BitmapContainer bc = new BitmapContainer(chunk, cardinality);
+    if (bc.getArraySizeInBytes() > sizeAsRunContainer) {
+      final RunContainer rc = new RunContainer(bc, numRuns);
+      Arrays.fill(chunk, minWord, maxWord + 1, 0L);
+      return rc;
+    }
+    // the scratch bitset is handed over to the container
+    chunk = new long[BitmapContainer.MAX_CAPACITY / 64];
+    return bc;
+  }
+}
@@ -26,7 +26,9 @@ import org.roaringbitmap.buffer.MappeableRunContainer;
  */
 public final class RunContainer extends Container implements Cloneable {
   private static final int DEFAULT_INIT_SIZE = 4;
-  private static final boolean ENABLE_GALLOPING_AND = false;
+  // galloping over the runs of a container only pays off when these are much more numerous than
+  // the runs (or values) of the other container
+  static final int GALLOPING_RATIO = 32;
 
   private static final long serialVersionUID = 1L;
 
@@ -141,54 +143,14 @@ public final class RunContainer extends Container implements Cloneable {
     setLength(runCount - 1, (short) runLen);
   }
 
-  // convert a bitmap container to a run container somewhat efficiently.
+  // convert a bitmap container to a run container, a word at a time
   protected RunContainer(BitmapContainer bc, int nbrRuns) {
     this.nbrruns = nbrRuns;
     valueslength = new short[2 * nbrRuns];
     if (nbrRuns == 0) {
       return;
     }
-
-    int longCtr = 0; // index of current long in bitmap
-    long curWord = bc.bitmap[0]; // its value
-    int runCount = 0;
-    while (true) {
-      // potentially multiword advance to first 1 bit
-      while (curWord == 0L && longCtr < bc.bitmap.length - 1) {
-        curWord = bc.bitmap[++longCtr];
-      }
-
-      if (curWord == 0L) {
-        // wrap up, no more runs
-        return;
-      }
-      int localRunStart = Long.numberOfTrailingZeros(curWord);
-      int runStart = localRunStart + 64 * longCtr;
-      // stuff 1s into number's LSBs
-      long curWordWith1s = curWord | (curWord - 1);
-
-      // find the next 0, potentially in a later word
-      int runEnd = 0;
-      while (curWordWith1s == -1L && longCtr < bc.bitmap.length - 1) {
-        curWordWith1s = bc.bitmap[++longCtr];
-      }
-
-      if (curWordWith1s == -1L) {
-        // a final unterminated run of 1s (32 of them)
-        runEnd = 64 + longCtr * 64;
-        setValue(runCount, (short) runStart);
-        setLength(runCount, (short) (runEnd - runStart - 1));
-        return;
-      }
-      int localRunEnd = Long.numberOfTrailingZeros(~curWordWith1s);
-      runEnd = localRunEnd + longCtr * 64;
-      setValue(runCount, (short) runStart);
-      setLength(runCount, (short) (runEnd - runStart - 1));
-      runCount++;
-      // now, zero out everything right of runEnd.
-      curWord = curWordWith1s & (curWordWith1s + 1);
-      // We've lathered and rinsed, so repeat...
-    }
+    Util.bitmapToRuns(bc.bitmap, valueslength);
   }
 
   /**
@@ -307,10 +269,11 @@ public final class RunContainer extends Container implements Cloneable {
 
     int rleval = Util.toIntUnsigned(this.getValue(rlepos));
     int rlelength = Util.toIntUnsigned(this.getLength(rlepos));
+    final boolean gallop = this.nbrruns > GALLOPING_RATIO * x.cardinality;
     while (arraypos < x.cardinality) {
       int arrayval = Util.toIntUnsigned(x.content[arraypos]);
       while (rleval + rlelength < arrayval) {// this will frequently be false
-        ++rlepos;
+        rlepos = gallop ? skipAhead(this, rlepos, arrayval) : rlepos + 1;
         if (rlepos == this.nbrruns) {
           return ac;// we are done
         }
@@ -381,9 +344,11 @@ public final class RunContainer extends Container implements Cloneable {
     int end = start + Util.toIntUnsigned(this.getLength(rlepos)) + 1;
     int xstart = Util.toIntUnsigned(x.getValue(xrlepos));
     int xend = xstart + Util.toIntUnsigned(x.getLength(xrlepos)) + 1;
+    final boolean gallop = this.nbrruns > GALLOPING_RATIO * x.nbrruns;
+    final boolean xgallop = x.nbrruns > GALLOPING_RATIO * this.nbrruns;
     while ((rlepos < this.nbrruns) && (xrlepos < x.nbrruns)) {
       if (end <= xstart) {
-        if (ENABLE_GALLOPING_AND) {
+        if (gallop) {
           rlepos = skipAhead(this, rlepos, xstart); // skip over runs until we have end > xstart (or
                                                     // rlepos is advanced beyond end)
         } else {
@@ -396,7 +361,7 @@ public final class RunContainer extends Container implements Cloneable {
         }
       } else if (xend <= start) {
         // exit the second run
-        if (ENABLE_GALLOPING_AND) {
+        if (xgallop) {
           xrlepos = skipAhead(x, xrlepos, start);
         } else {
           ++xrlepos;
@@ -449,17 +414,18 @@ public final class RunContainer extends Container implements Cloneable {
   @Override
   public int andCardinality(ArrayContainer x) {
     if (this.nbrruns == 0) {
-      return x.cardinality;
+      return 0;
     }
     int rlepos = 0;
     int arraypos = 0;
     int andCardinality = 0;
     int rleval = Util.toIntUnsigned(this.getValue(rlepos));
     int rlelength = Util.toIntUnsigned(this.getLength(rlepos));
+    final boolean gallop = this.nbrruns > GALLOPING_RATIO * x.cardinality;
     while (arraypos < x.cardinality) {
       int arrayval = Util.toIntUnsigned(x.content[arraypos]);
       while (rleval + rlelength < arrayval) {// this will frequently be false
-        ++rlepos;
+        rlepos = gallop ? skipAhead(this, rlepos, arrayval) : rlepos + 1;
         if (rlepos == this.nbrruns) {
           return andCardinality;// we are done
         }
@@ -503,9 +469,11 @@ public final class RunContainer extends Container implements Cloneable {
     int end = start + Util.toIntUnsigned(this.getLength(rlepos)) + 1;
     int xstart = Util.toIntUnsigned(x.getValue(xrlepos));
     int xend = xstart + Util.toIntUnsigned(x.getLength(xrlepos)) + 1;
+    final boolean gallop = this.nbrruns > GALLOPING_RATIO * x.nbrruns;
+    final boolean xgallop = x.nbrruns > GALLOPING_RATIO * this.nbrruns;
     while ((rlepos < this.nbrruns) && (xrlepos < x.nbrruns)) {
       if (end <= xstart) {
-        if (ENABLE_GALLOPING_AND) {
+        if (gallop) {
           rlepos = skipAhead(this, rlepos, xstart); // skip over runs until we have end > xstart (or
                                                     // rlepos is advanced beyond end)
         } else {
@@ -518,7 +486,7 @@ public final class RunContainer extends Container implements Cloneable {
         }
       } else if (xend <= start) {
         // exit the second run
-        if (ENABLE_GALLOPING_AND) {
+        if (xgallop) {
           xrlepos = skipAhead(x, xrlepos, start);
         } else {
           ++xrlepos;
@@ -560,7 +528,7 @@ public final class RunContainer extends Container implements Cloneable {
           }
         }
         // earliestend - lateststart are all values that are true.
-        cardinality += (short) (earliestend - lateststart);
+        cardinality += earliestend - lateststart;
       }
     }
     return cardinality;
@@ -743,49 +711,58 @@ public final class RunContainer extends Container implements Cloneable {
 
   @Override
   protected boolean contains(RunContainer runContainer) {
-    int i1 = 0, i2 = 0;
     final int runCount = numberOfRuns();
-    while(i1 < runCount && i2 < runContainer.numberOfRuns()) {
-      int start1 = getValue(i1);
-      int stop1 = start1 + Util.toIntUnsigned(getLength(i1));
-      int start2 = runContainer.getValue(i2);
-      int stop2 = start2 + Util.toIntUnsigned(runContainer.getLength(i2));
-      if(start1 > start2) {
-        return false;
-      } else {
-        if(stop1 > stop2) {
-          i1++;
-        } else if(stop1 == stop2) {
-          i1++;
-          i2++;
-        } else {
-          i2++;
+    final int runCount2 = runContainer.numberOfRuns();
+    final boolean gallop = runCount > GALLOPING_RATIO * runCount2;
+    int i1 = 0;
+    for (int i2 = 0; i2 < runCount2; ++i2) {
+      final int start2 = Util.toIntUnsigned(runContainer.getValue(i2));
+      final int stop2 = start2 + Util.toIntUnsigned(runContainer.getLength(i2));
+      int start1 = 0;
+      int stop1 = -1;
+      while (i1 < runCount) {
+        start1 = Util.toIntUnsigned(getValue(i1));
+        stop1 = start1 + Util.toIntUnsigned(getLength(i1));
+        if (stop1 >= start2) {
+          break;
         }
+        i1 = gallop ? skipAhead(this, i1, start2) : i1 + 1;
+      }
+      if (i1 == runCount || start1 > start2 || stop1 < stop2) {
+        return false;
       }
     }
-    return i1 == runCount;
+    return true;
   }
 
   @Override
   protected boolean contains(ArrayContainer arrayContainer) {
-    final int cardinality = getCardinality();
+    final int cardinality = arrayContainer.getCardinality();
     final int runCount = numberOfRuns();
-    if (arrayContainer.getCardinality() > cardinality) {
+    if (cardinality > getCardinality()) {
       return false;
     }
-    int ia = 0, ir = 0;
-    while(ia < arrayContainer.getCardinality() && ir <= runCount) {
-      int start = getValue(ir);
-      int stop = start + Util.toIntUnsigned(getLength(ir));
-      if(arrayContainer.content[ia] < start) {
+    final boolean gallop = runCount > GALLOPING_RATIO * cardinality;
+    final short[] content = arrayContainer.content;
+    int ia = 0;
+    int ir = 0;
+    while (ia < cardinality && ir < runCount) {
+      final int value = Util.toIntUnsigned(content[ia]);
+      final int start = Util.toIntUnsigned(getValue(ir));
+      final int stop = start + Util.toIntUnsigned(getLength(ir));
+      if (value < start) {
         return false;
-      } else if (arrayContainer.content[ia] > stop) {
-        ++ir;
+      } else if (value > stop) {
+        ir = gallop ? skipAhead(this, ir, value) : ir + 1;
       } else {
-        ++ia;
+        // skip the values within the run
+        ia = Util.advanceUntil(content, ia, cardinality, (short) stop);
+        if (ia < cardinality && Util.toIntUnsigned(content[ia]) == stop) {
+          ++ia;
+        }
       }
     }
-    return ia <= cardinality && ir <= runCount;
+    return ia == cardinality;
   }
 
   @Override
@@ -1322,10 +1299,11 @@ public final class RunContainer extends Container implements Cloneable {
     int arraypos = 0;
     int rleval = Util.toIntUnsigned(this.getValue(rlepos));
     int rlelength = Util.toIntUnsigned(this.getLength(rlepos));
+    final boolean gallop = this.nbrruns > GALLOPING_RATIO * x.cardinality;
     while (arraypos < x.cardinality) {
       int arrayval = Util.toIntUnsigned(x.content[arraypos]);
       while (rleval + rlelength < arrayval) {// this will frequently be false
-        ++rlepos;
+        rlepos = gallop ? skipAhead(this, rlepos, arrayval) : rlepos + 1;
         if (rlepos == this.nbrruns) {
           return false;
         }
@@ -1364,9 +1342,11 @@ public final class RunContainer extends Container implements Cloneable {
     int end = start + Util.toIntUnsigned(this.getLength(rlepos)) + 1;
     int xstart = Util.toIntUnsigned(x.getValue(xrlepos));
     int xend = xstart + Util.toIntUnsigned(x.getLength(xrlepos)) + 1;
+    final boolean gallop = this.nbrruns > GALLOPING_RATIO * x.nbrruns;
+    final boolean xgallop = x.nbrruns > GALLOPING_RATIO * this.nbrruns;
     while ((rlepos < this.nbrruns) && (xrlepos < x.nbrruns)) {
       if (end <= xstart) {
-        if (ENABLE_GALLOPING_AND) {
+        if (gallop) {
           rlepos = skipAhead(this, rlepos, xstart); // skip over runs until we have end > xstart (or
                                                     // rlepos is advanced beyond end)
         } else {
@@ -1379,7 +1359,7 @@ public final class RunContainer extends Container implements Cloneable {
         }
       } else if (xend <= start) {
         // exit the second run
-        if (ENABLE_GALLOPING_AND) {
+        if (xgallop) {
           xrlepos = skipAhead(x, xrlepos, start);
         } else {
           ++xrlepos;
@@ -2066,8 +2046,8 @@ public final class RunContainer extends Container implements Cloneable {
 
 
   // bootstrapping (aka "galloping") binary search. Always skips at least one.
-  // On our "real data" benchmarks, enabling galloping is a minor loss
-  // .."ifdef ENABLE_GALLOPING_AND" :)
+  // On our "real data" benchmarks, galloping is a minor loss when both containers have a similar
+  // number of runs, hence GALLOPING_RATIO
   private int skipAhead(RunContainer skippingOn, int pos, int targetToExceed) {
     int left = pos;
     int span = 1;
@@ -0,0 +1,312 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * The cardinalities of two bitmaps and of their intersection, from which the Jaccard index and
+ * the overlap coefficient follow. These are computed in a single pass over the containers of the
+ * two bitmaps, rather than with {@link RoaringBitmap#andCardinality(RoaringBitmap, RoaringBitmap)}
+ * and {@link RoaringBitmap#orCardinality(RoaringBitmap, RoaringBitmap)} which both scan them.
+ *
+ * The batch methods compare a probe bitmap with many candidates, or all the bitmaps of a list
+ * with each other, counting the cardinality of each bitmap only once. They can run on several
+ * threads.
+ *
+ * <pre>
+ * {@code
+ *      Similarity s = Similarity.compute(rb1, rb2);
+ *      double jaccard = s.jaccard();
+ *      Similarity[] ranked = Similarity.oneToMany(executor, 8, probe, candidates);
+ * }
+ * </pre>
+ */
+public final class Similarity {
+
+  private final long cardinality1;
+
+  private final long cardinality2;
+
+  private final long intersectionCardinality;
+
+  Similarity(final long cardinality1, final long cardinality2,
+      final long intersectionCardinality) {
+    this.cardinality1 = cardinality1;
+    this.cardinality2 = cardinality2;
+    this.intersectionCardinality = intersectionCardinality;
+  }
+
+  /**
+   * Compute the similarity of two bitmaps.
+   *
+   * @param x1 first bitmap
+   * @param x2 other bitmap
+   * @return the cardinalities of the bitmaps and of their intersection
+   */
+  public static Similarity compute(final RoaringBitmap x1, final RoaringBitmap x2) {
+    final RoaringArray ra1 = x1.highLowContainer;
+    final RoaringArray ra2 = x2.highLowContainer;
+    long cardinality1 = 0;
+    long cardinality2 = 0;
+    long intersection = 0;
+    int pos1 = 0;
+    int pos2 = 0;
+    while (pos1 < ra1.size && pos2 < ra2.size) {
+      final short s1 = ra1.keys[pos1];
+      final short s2 = ra2.keys[pos2];
+      if (s1 == s2) {
+        final Container c1 = ra1.values[pos1];
+        final Container c2 = ra2.values[pos2];
+        cardinality1 += c1.getCardinality();
+        cardinality2 += c2.getCardinality();
+        intersection += c1.andCardinality(c2);
+        ++pos1;
+        ++pos2;
+      } else if (Util.compareUnsigned(s1, s2) < 0) {
+        cardinality1 += ra1.values[pos1++].getCardinality();
+      } else {
+        cardinality2 += ra2.values[pos2++].getCardinality();
+      }
+    }
+    while (pos1 < ra1.size) {
+      cardinality1 += ra1.values[pos1++].getCardinality();
+    }
+    while (pos2 < ra2.size) {
+      cardinality2 += ra2.values[pos2++].getCardinality();
+    }
+    return new Similarity(cardinality1, cardinality2, intersection);
+  }
+
+  /**
+   * Compute the similarity of the probe with each candidate. The cardinality of the probe is only
+   * computed once.
+   *
+   * @param probe first bitmap of each comparison
+   * @param candidates other bitmaps
+   * @return the similarities, in the order of the candidates
+   */
+  public static Similarity[] oneToMany(final RoaringBitmap probe,
+      final List<? extends RoaringBitmap> candidates) {
+    final Similarity[] answer = new Similarity[candidates.size()];
+    final long probeCardinality = probe.getLongCardinality();
+    for (int k = 0; k < answer.length; ++k) {
+      answer[k] = withProbe(probe, probeCardinality, candidates.get(k));
+    }
+    return answer;
+  }
+
+  /**
+   * Compute the similarity of the probe with each candidate on several threads. The candidates
+   * are split into as many contiguous groups as there are tasks.
+   *
+   * @param executor executor running the tasks
+   * @param tasks number of tasks, typically the number of threads of the executor
+   * @param probe first bitmap of each comparison
+   * @param candidates other bitmaps, these must not be modified until this method returns
+   * @return the similarities, in the order of the candidates
+   * @throws InterruptedException if interrupted while waiting for the tasks
+   */
+  public static Similarity[] oneToMany(final ExecutorService executor, final int tasks,
+      final RoaringBitmap probe, final List<? extends RoaringBitmap> candidates)
+      throws InterruptedException {
+    checkTasks(tasks);
+    final Similarity[] answer = new Similarity[candidates.size()];
+    final long probeCardinality = probe.getLongCardinality();
+    final int groupSize = Math.max(1, (answer.length + tasks - 1) / tasks);
+    final List<Callable<Void>> work = new ArrayList<Callable<Void>>(tasks);
+    for (int start = 0; start < answer.length; start += groupSize) {
+      final int begin = start;
+      final int end = Math.min(answer.length, start + groupSize);
+      work.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          for (int k = begin; k < end; ++k) {
+            answer[k] = withProbe(probe, probeCardinality, candidates.get(k));
+          }
+          return null;
+        }
+      });
+    }
+    run(executor, work);
+    return answer;
+  }
+
+  /**
+   * Compute the similarity of each pair of bitmaps on several threads. The cardinality of each
+   * bitmap is only computed once. The rows of the result are shared out between the tasks.
+   *
+   * @param executor executor running the tasks
+   * @param tasks number of tasks, typically the number of threads of the executor
+   * @param bitmaps input bitmaps, these must not be modified until this method returns
+   * @return a square matrix, where the element (i, j) is the similarity of the bitmaps i and j;
+   *         the elements (i, j) and (j, i) are the same object, with bitmap i first when i &lt; j
+   * @throws InterruptedException if interrupted while waiting for the tasks
+   */
+  public static Similarity[][] allPairs(final ExecutorService executor, final int tasks,
+      final List<? extends RoaringBitmap> bitmaps) throws InterruptedException {
+    checkTasks(tasks);
+    final int n = bitmaps.size();
+    final long[] cardinalities = new long[n];
+    for (int k = 0; k < n; ++k) {
+      cardinalities[k] = bitmaps.get(k).getLongCardinality();
+    }
+    final Similarity[][] answer = new Similarity[n][n];
+    final List<Callable<Void>> work = new ArrayList<Callable<Void>>(tasks);
+    for (int t = 0; t < Math.min(tasks, n); ++t) {
+      final int first = t;
+      work.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          // rows get shorter, so every task takes rows all along the matrix
+          for (int i = first; i < n; i += tasks) {
+            final RoaringBitmap x1 = bitmaps.get(i);
+            answer[i][i] = new Similarity(cardinalities[i], cardinalities[i], cardinalities[i]);
+            for (int j = i + 1; j < n; ++j) {
+              final Similarity s = new Similarity(cardinalities[i], cardinalities[j],
+                  RoaringBitmap.andCardinality(x1, bitmaps.get(j)));
+              answer[i][j] = s;
+              answer[j][i] = s;
+            }
+          }
+          return null;
+        }
+      });
+    }
+    run(executor, work);
+    return answer;
+  }
+
+  // single pass over the containers of the candidate, seeking the matching containers of the probe
+  private static Similarity withProbe(final RoaringBitmap probe, final long probeCardinality,
+      final RoaringBitmap candidate) {
+    final RoaringArray ra1 = probe.highLowContainer;
+    final RoaringArray ra2 = candidate.highLowContainer;
+    long cardinality2 = 0;
+    long intersection = 0;
+    int pos1 = 0;
+    for (int pos2 = 0; pos2 < ra2.size; ++pos2) {
+      final Container c2 = ra2.values[pos2];
+      cardinality2 += c2.getCardinality();
+      if (pos1 < ra1.size) {
+        final short key = ra2.keys[pos2];
+        pos1 = ra1.advanceUntil(key, pos1 - 1);
+        if (pos1 < ra1.size && ra1.keys[pos1] == key) {
+          intersection += ra1.values[pos1].andCardinality(c2);
+        }
+      }
+    }
+    return new Similarity(probeCardinality, cardinality2, intersection);
+  }
+
+  private static void checkTasks(final int tasks) {
+    if (tasks < 1) {
+      throw new IllegalArgumentException("tasks must be positive: " + tasks);
+    }
+  }
+
+  private static void run(final ExecutorService executor, final List<Callable<Void>> work)
+      throws InterruptedException {
+    final List<Future<Void>> futures = new ArrayList<Future<Void>>(work.size());
+    try {
+      for (Callable<Void> task : work) {
+        futures.add(executor.submit(task));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      for (Future<Void> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * Cardinality of the first bitmap.
+   *
+   * @return the cardinality
+   */
+  public long getCardinality1() {
+    return cardinality1;
+  }
+
+  /**
+   * Cardinality of the second bitmap.
+   *
+   * @return the cardinality
+   */
+  public long getCardinality2() {
+    return cardinality2;
+  }
+
+  /**
+   * Cardinality of the intersection of the bitmaps.
+   *
+   * @return the cardinality
+   */
+  public long getIntersectionCardinality() {
+    return intersectionCardinality;
+  }
+
+  /**
+   * Cardinality of the union of the bitmaps.
+   *
+   * @return the cardinality
+   */
+  public long getUnionCardinality() {
+    return cardinality1 + cardinality2 - intersectionCardinality;
+  }
+
+  /**
+   * Jaccard index: the cardinality of the intersection divided by the cardinality of the union,
+   * 1 when both bitmaps are empty.
+   *
+   * @return a value from 0 to 1
+   */
+  public double jaccard() {
+    final long union = getUnionCardinality();
+    return union == 0 ? 1 : (double) intersectionCardinality / union;
+  }
+
+  /**
+   * Overlap coefficient: the cardinality of the intersection divided by the smallest of the
+   * cardinalities of the bitmaps, 1 when one of them is empty.
+   *
+   * @return a value from 0 to 1, 1 when a bitmap is a subset of the other one
+   */
+  public double overlap() {
+    final long smallest = Math.min(cardinality1, cardinality2);
+    return smallest == 0 ? 1 : (double) intersectionCardinality / smallest;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof Similarity)) {
+      return false;
+    }
+    final Similarity other = (Similarity) o;
+    return cardinality1 == other.cardinality1 && cardinality2 == other.cardinality2
+        && intersectionCardinality == other.intersectionCardinality;
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (31 * (31 * cardinality1 + cardinality2) + intersectionCardinality);
+  }
+
+  @Override
+  public String toString() {
+    return "Similarity{cardinality1=" + cardinality1 + ", cardinality2=" + cardinality2
+        + ", intersection=" + intersectionCardinality + "}";
+  }
+}
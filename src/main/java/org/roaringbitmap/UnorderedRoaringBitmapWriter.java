@@ -0,0 +1,152 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+/**
+ * Adds integers provided in any order to a RoaringBitmap, such as row ids ingested out of order.
+ *
+ * Adding a value whose 16 most significant bits are new to a RoaringBitmap inserts a container
+ * in the middle of its sorted key array, shifting all the following keys and containers. While
+ * values are added through this class, the containers are instead held in a two-level radix
+ * directory indexed by the high and low bytes of their key: finding or creating the container of
+ * a value takes constant time whatever the number of containers. Nodes of the directory are only
+ * allocated for the key ranges that are used. The containers are moved back to the sorted key
+ * array, in a single pass, by {@link #get()}.
+ *
+ * <pre>
+ * {@code
+ *      UnorderedRoaringBitmapWriter writer = new UnorderedRoaringBitmapWriter(bitmap);
+ *      for (int rowId : incomingRowIds) {
+ *        writer.add(rowId);
+ *      }
+ *      writer.get(); // bitmap now holds the new row ids
+ * }
+ * </pre>
+ *
+ * The bitmap must not be accessed between the first call to add and the following call to get.
+ * This class is not thread-safe.
+ */
+public final class UnorderedRoaringBitmapWriter {
+
+  private static final int FANOUT = 256;
+
+  private final RoaringBitmap underlying;
+
+  // directory[high byte of the key][low byte of the key], nodes are allocated on demand
+  private final Container[][] directory = new Container[FANOUT][];
+
+  private int numberOfContainers = 0;
+
+  // whether the containers of the bitmap were moved to the directory
+  private boolean loaded = false;
+
+  // cache of the last container used, consecutive values often share their container
+  private int lastKey = -1;
+
+  private Container[] lastNode = null;
+
+  /**
+   * Create a writer adding to a new, empty bitmap.
+   */
+  public UnorderedRoaringBitmapWriter() {
+    this(new RoaringBitmap());
+  }
+
+  /**
+   * Create a writer adding to the provided bitmap.
+   *
+   * @param underlying bitmap receiving the values
+   */
+  public UnorderedRoaringBitmapWriter(final RoaringBitmap underlying) {
+    this.underlying = underlying;
+  }
+
+  /**
+   * Add the value to the bitmap, whether it already appears or not.
+   *
+   * @param x integer value
+   */
+  public void add(final int x) {
+    if (!loaded) {
+      load();
+    }
+    final int key = x >>> 16;
+    if (key != lastKey) {
+      Container[] node = directory[key >>> 8];
+      if (node == null) {
+        node = new Container[FANOUT];
+        directory[key >>> 8] = node;
+      }
+      lastNode = node;
+      lastKey = key;
+    }
+    final int slot = key & (FANOUT - 1);
+    final Container c = lastNode[slot];
+    if (c == null) {
+      lastNode[slot] = new ArrayContainer().add(Util.lowbits(x));
+      ++numberOfContainers;
+    } else {
+      lastNode[slot] = c.add(Util.lowbits(x));
+    }
+  }
+
+  /**
+   * Add all the specified values to the bitmap.
+   *
+   * @param dat set values
+   */
+  public void add(final int... dat) {
+    for (int k = 0; k < dat.length; ++k) {
+      add(dat[k]);
+    }
+  }
+
+  /**
+   * Move the containers back to the bitmap and return it. Values added afterwards are added to
+   * the same bitmap.
+   *
+   * @return the bitmap holding all values added so far
+   */
+  public RoaringBitmap get() {
+    if (loaded) {
+      final RoaringArray ra = underlying.highLowContainer;
+      ra.extendArray(numberOfContainers);
+      for (int high = 0; high < FANOUT; ++high) {
+        final Container[] node = directory[high];
+        if (node == null) {
+          continue;
+        }
+        for (int low = 0; low < FANOUT; ++low) {
+          if (node[low] != null) {
+            ra.append((short) ((high << 8) | low), node[low]);
+          }
+        }
+        directory[high] = null;
+      }
+      numberOfContainers = 0;
+      lastKey = -1;
+      lastNode = null;
+      loaded = false;
+    }
+    return underlying;
+  }
+
+  // moves the containers of the bitmap to the directory
+  private void load() {
+    final RoaringArray ra = underlying.highLowContainer;
+    for (int i = 0; i < ra.size(); ++i) {
+      final int key = Util.toIntUnsigned(ra.getKeyAtIndex(i));
+      Container[] node = directory[key >>> 8];
+      if (node == null) {
+        node = new Container[FANOUT];
+        directory[key >>> 8] = node;
+      }
+      node[key & (FANOUT - 1)] = ra.getContainerAtIndex(i);
+    }
+    numberOfContainers = ra.size();
+    ra.resize(0);
+    loaded = true;
+  }
+}
@@ -350,6 +350,21 @@ public final class Util {
 
   }
 
+  /**
+   * reverse the order of the values at begin, begin+1,..., end-1
+   *
+   * @param array array to be modified
+   * @param begin first index to be modified (inclusive)
+   * @param end last index to be modified (exclusive)
+   */
+  public static void reverse(int[] array, int begin, int end) {
+    for (int i = begin, j = end - 1; i < j; ++i, --j) {
+      final int tmp = array[i];
+      array[i] = array[j];
+      array[j] = tmp;
+    }
+  }
+
   /**
    * Given a word w, return the position of the jth true bit.
    *
@@ -402,6 +417,45 @@ public final class Util {
     return seen + counter;
   }
 
+  /**
+   * Write the runs of consecutive set bits of the bitmap as (start, length - 1) pairs, the layout
+   * of the run containers. The transitions between runs of ones and runs of zeros of a whole word
+   * are found at once, as w ^ (w &lt;&lt; 1) with the last bit of the previous word carried in,
+   * and then visited with numberOfTrailingZeros. Every word of the bitmap is read, but within a
+   * word the cost depends on the number of runs rather than on the number of bits.
+   *
+   * @param bitmap array of words
+   * @param valueslength receives the runs, must hold two shorts per run
+   * @return the number of runs
+   */
+  public static int bitmapToRuns(long[] bitmap, short[] valueslength) {
+    int pos = 0;
+    int runStart = 0;
+    long carry = 0;
+    for (int k = 0; k < bitmap.length; ++k) {
+      final long w = bitmap[k];
+      long transitions = w ^ ((w << 1) | carry);
+      carry = w >>> 63;
+      while (transitions != 0) {
+        final int bit = Long.numberOfTrailingZeros(transitions);
+        final int p = (k << 6) + bit;
+        if (((w >>> bit) & 1) != 0) {
+          runStart = p;
+        } else {
+          valueslength[pos++] = (short) runStart;
+          valueslength[pos++] = (short) (p - runStart - 1);
+        }
+        transitions &= transitions - 1;
+      }
+    }
+    if (carry != 0) {
+      // the last run ends with the bitmap
+      valueslength[pos++] = (short) runStart;
+      valueslength[pos++] = (short) ((bitmap.length << 6) - runStart - 1);
+    }
+    return pos / 2;
+  }
+
   /**
    * set bits at start, start+1,..., end-1
    *
@@ -807,6 +861,20 @@ public final class Util {
    */
   public static int unsignedLocalIntersect2by2Cardinality(final short[] set1, final int length1,
       final short[] set2, final int length2) {
+    return unsignedLocalIntersect2by2Cardinality(set1, length1, set2, length2, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Compute the cardinality of the intersection, stopping once it reaches the limit
+   * @param set1 first set
+   * @param length1 how many values to consider in the first set
+   * @param set2 second set
+   * @param length2 how many values to consider in the second set
+   * @param limit cardinality at which to stop
+   * @return cardinality of the intersection, at most limit
+   */
+  public static int unsignedLocalIntersect2by2Cardinality(final short[] set1, final int length1,
+      final short[] set2, final int length2, final int limit) {
     if ((0 == length1) || (0 == length2)) {
       return 0;
     }
@@ -841,6 +909,9 @@ public final class Util {
       } else {
         // (set2[k2] == set1[k1])
         pos++;
+        if (pos == limit) {
+          break;
+        }
         ++k1;
         if (k1 == length1) {
           break;
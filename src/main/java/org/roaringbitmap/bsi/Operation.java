@@ -0,0 +1,24 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.bsi;
+
+/**
+ * Comparison operators supported by
+ * {@link RoaringBitmapSliceIndex#compare(Operation, long, org.roaringbitmap.RoaringBitmap)}.
+ */
+public enum Operation {
+  /** equal */
+  EQ,
+  /** not equal */
+  NEQ,
+  /** less than */
+  LT,
+  /** less than or equal */
+  LE,
+  /** greater than */
+  GT,
+  /** greater than or equal */
+  GE
+}
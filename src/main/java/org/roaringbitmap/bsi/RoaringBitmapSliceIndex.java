@@ -0,0 +1,414 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.bsi;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A bit-sliced index mapping column ids (e.g., row ids) to non-negative integer values, such as
+ * a birth year or a sales amount. The index holds one RoaringBitmap per bit of the values (the
+ * kth slice holds the column ids whose value has its kth bit set) and an existence bitmap holding
+ * the column ids that have a value.
+ *
+ * Range predicates, sums, minimum, maximum and top-K are computed with bitmap operations over the
+ * slices (following O'Neil and Quass, "Improved Query Performance with Variant Indexes"), so that
+ * their cost depends on the number of bits of the values rather than on the number of distinct
+ * values. Every query takes an optional found set restricting the column ids considered, for
+ * instance the result of another predicate; a null found set stands for all column ids.
+ *
+ * <pre>
+ * {@code
+ *      RoaringBitmapSliceIndex birthYear = new RoaringBitmapSliceIndex();
+ *      birthYear.setValue(rowId, 1930);
+ *      // ...
+ *      RoaringBitmap before1950 = birthYear.compare(Operation.LT, 1950, null);
+ *      long total = amounts.sum(before1950);
+ * }
+ * </pre>
+ *
+ * This class is not thread-safe, but queries do not modify the index and may run concurrently.
+ */
+public class RoaringBitmapSliceIndex {
+
+  private RoaringBitmap existenceBitmap = new RoaringBitmap();
+
+  // slices[k] holds the column ids whose value has its kth bit set
+  private RoaringBitmap[] slices = new RoaringBitmap[0];
+
+  /**
+   * Create an empty index.
+   */
+  public RoaringBitmapSliceIndex() {
+  }
+
+  /**
+   * Set the value of a column, replacing its previous value if any.
+   *
+   * @param columnId column id
+   * @param value non-negative value
+   * @throws IllegalArgumentException if the value is negative
+   */
+  public void setValue(int columnId, long value) {
+    if (value < 0) {
+      throw new IllegalArgumentException("negative value " + value);
+    }
+    final int bitDepth = 64 - Long.numberOfLeadingZeros(value);
+    if (bitDepth > slices.length) {
+      final int oldDepth = slices.length;
+      slices = Arrays.copyOf(slices, bitDepth);
+      for (int k = oldDepth; k < bitDepth; ++k) {
+        slices[k] = new RoaringBitmap();
+      }
+    }
+    final boolean existed = !existenceBitmap.checkedAdd(columnId);
+    for (int k = 0; k < slices.length; ++k) {
+      if ((value & (1L << k)) != 0) {
+        slices[k].add(columnId);
+      } else if (existed) {
+        slices[k].remove(columnId);
+      }
+    }
+  }
+
+  /**
+   * Checks whether a value was set for the column.
+   *
+   * @param columnId column id
+   * @return whether the column has a value
+   */
+  public boolean valueExist(int columnId) {
+    return existenceBitmap.contains(columnId);
+  }
+
+  /**
+   * Get the value of a column.
+   *
+   * @param columnId column id
+   * @return the value of the column, zero if the column has no value (see {@link #valueExist})
+   */
+  public long getValue(int columnId) {
+    long value = 0;
+    for (int k = 0; k < slices.length; ++k) {
+      if (slices[k].contains(columnId)) {
+        value |= 1L << k;
+      }
+    }
+    return value;
+  }
+
+  /**
+   * @return the column ids having a value, this bitmap should not be modified
+   */
+  public RoaringBitmap getExistenceBitmap() {
+    return existenceBitmap;
+  }
+
+  /**
+   * @return the number of slices, that is the number of bits of the largest value
+   */
+  public int bitCount() {
+    return slices.length;
+  }
+
+  /**
+   * @return the number of columns having a value
+   */
+  public long getLongCardinality() {
+    return existenceBitmap.getLongCardinality();
+  }
+
+  // column ids considered by a query
+  private RoaringBitmap candidates(RoaringBitmap foundSet) {
+    return foundSet == null ? existenceBitmap.clone() : RoaringBitmap.and(existenceBitmap, foundSet);
+  }
+
+  /**
+   * Find the columns whose value compares to the provided value according to the operation.
+   *
+   * @param operation comparison operator
+   * @param value value to compare to
+   * @param foundSet column ids to consider, null for all
+   * @return the column ids of the found set having a value satisfying the comparison
+   */
+  public RoaringBitmap compare(Operation operation, long value, RoaringBitmap foundSet) {
+    RoaringBitmap eq = candidates(foundSet);
+    if (value < 0 || 64 - Long.numberOfLeadingZeros(value) > slices.length) {
+      // the value is out of the range of the index
+      final boolean greaterThanAll = value >= 0;
+      switch (operation) {
+        case NEQ:
+          return eq;
+        case LT:
+        case LE:
+          return greaterThanAll ? eq : new RoaringBitmap();
+        case GT:
+        case GE:
+          return greaterThanAll ? new RoaringBitmap() : eq;
+        default:
+          return new RoaringBitmap();
+      }
+    }
+    final RoaringBitmap lt = new RoaringBitmap();
+    final RoaringBitmap gt = new RoaringBitmap();
+    for (int k = slices.length - 1; k >= 0; --k) {
+      if (operation != Operation.EQ && operation != Operation.NEQ) {
+        if ((value & (1L << k)) != 0) {
+          lt.or(RoaringBitmap.andNot(eq, slices[k]));
+        } else {
+          gt.or(RoaringBitmap.and(eq, slices[k]));
+        }
+      }
+      if ((value & (1L << k)) != 0) {
+        eq.and(slices[k]);
+      } else {
+        eq.andNot(slices[k]);
+      }
+      if (eq.isEmpty()) {
+        // the lower slices cannot add to lt or gt
+        break;
+      }
+    }
+    switch (operation) {
+      case EQ:
+        return eq;
+      case NEQ:
+        return RoaringBitmap.andNot(candidates(foundSet), eq);
+      case LT:
+        return lt;
+      case LE:
+        lt.or(eq);
+        return lt;
+      case GT:
+        return gt;
+      case GE:
+        gt.or(eq);
+        return gt;
+      default:
+        throw new IllegalArgumentException("unsupported operation " + operation);
+    }
+  }
+
+  /**
+   * Find the columns whose value lies between min and max, inclusively.
+   *
+   * @param min smallest value
+   * @param max largest value
+   * @param foundSet column ids to consider, null for all
+   * @return the column ids of the found set having a value in [min, max]
+   */
+  public RoaringBitmap range(long min, long max, RoaringBitmap foundSet) {
+    final RoaringBitmap atLeastMin = compare(Operation.GE, min, foundSet);
+    return compare(Operation.LE, max, atLeastMin);
+  }
+
+  /**
+   * Sum the values of the columns of the found set. The sum must fit in a long.
+   *
+   * @param foundSet column ids to consider, null for all
+   * @return the sum of the values
+   */
+  public long sum(RoaringBitmap foundSet) {
+    long sum = 0;
+    for (int k = 0; k < slices.length; ++k) {
+      sum += sliceCount(k, foundSet) << k;
+    }
+    return sum;
+  }
+
+  /**
+   * Sum the values of the columns of the found set, counting the columns of each slice as a
+   * separate task of the executor. The sum must fit in a long.
+   *
+   * @param foundSet column ids to consider, null for all
+   * @param executor executor running the per-slice tasks
+   * @return the sum of the values
+   * @throws InterruptedException if interrupted while waiting for the tasks
+   */
+  public long parallelSum(final RoaringBitmap foundSet, ExecutorService executor)
+      throws InterruptedException {
+    final List<Future<Long>> counts = new ArrayList<>(slices.length);
+    for (int k = 0; k < slices.length; ++k) {
+      final int slice = k;
+      counts.add(executor.submit(new Callable<Long>() {
+        @Override
+        public Long call() {
+          return sliceCount(slice, foundSet);
+        }
+      }));
+    }
+    long sum = 0;
+    try {
+      for (int k = 0; k < slices.length; ++k) {
+        sum += counts.get(k).get() << k;
+      }
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      for (Future<Long> count : counts) {
+        count.cancel(true);
+      }
+    }
+    return sum;
+  }
+
+  private long sliceCount(int k, RoaringBitmap foundSet) {
+    // the slices only hold existing columns
+    return foundSet == null ? slices[k].getLongCardinality()
+        : RoaringBitmap.andCardinality(slices[k], foundSet);
+  }
+
+  /**
+   * Find the smallest value among the columns of the found set.
+   *
+   * @param foundSet column ids to consider, null for all
+   * @return the smallest value
+   * @throws NoSuchElementException if no column of the found set has a value
+   */
+  public long min(RoaringBitmap foundSet) {
+    RoaringBitmap candidates = candidates(foundSet);
+    if (candidates.isEmpty()) {
+      throw new NoSuchElementException("no value in the found set");
+    }
+    long min = 0;
+    for (int k = slices.length - 1; k >= 0; --k) {
+      final RoaringBitmap zeros = RoaringBitmap.andNot(candidates, slices[k]);
+      if (zeros.isEmpty()) {
+        min |= 1L << k;
+      } else {
+        candidates = zeros;
+      }
+    }
+    return min;
+  }
+
+  /**
+   * Find the largest value among the columns of the found set.
+   *
+   * @param foundSet column ids to consider, null for all
+   * @return the largest value
+   * @throws NoSuchElementException if no column of the found set has a value
+   */
+  public long max(RoaringBitmap foundSet) {
+    RoaringBitmap candidates = candidates(foundSet);
+    if (candidates.isEmpty()) {
+      throw new NoSuchElementException("no value in the found set");
+    }
+    long max = 0;
+    for (int k = slices.length - 1; k >= 0; --k) {
+      final RoaringBitmap ones = RoaringBitmap.and(candidates, slices[k]);
+      if (!ones.isEmpty()) {
+        max |= 1L << k;
+        candidates = ones;
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Find the k columns of the found set having the largest values. Among columns having the same
+   * value, the smallest column ids are selected.
+   *
+   * @param k number of columns to select
+   * @param foundSet column ids to consider, null for all
+   * @return the selected column ids, all of them if fewer than k columns have a value
+   */
+  public RoaringBitmap topK(int k, RoaringBitmap foundSet) {
+    if (k < 0) {
+      throw new IllegalArgumentException("negative k " + k);
+    }
+    // greater holds columns known to be in the top k, equal the columns tied so far
+    RoaringBitmap greater = new RoaringBitmap();
+    RoaringBitmap equal = candidates(foundSet);
+    if (equal.getLongCardinality() <= k) {
+      return equal;
+    }
+    for (int i = slices.length - 1; i >= 0 && !equal.isEmpty(); --i) {
+      final RoaringBitmap ones = RoaringBitmap.and(equal, slices[i]);
+      final long n = greater.getLongCardinality() + ones.getLongCardinality();
+      if (n > k) {
+        equal = ones;
+      } else {
+        greater.or(ones);
+        equal.andNot(slices[i]);
+        if (n == k) {
+          return greater;
+        }
+      }
+    }
+    greater.or(equal.limit(k - greater.getCardinality()));
+    return greater;
+  }
+
+  /**
+   * Use a run-length encoding where it is more space efficient
+   *
+   * @return whether a change was applied
+   */
+  public boolean runOptimize() {
+    boolean answer = existenceBitmap.runOptimize();
+    for (RoaringBitmap slice : slices) {
+      answer |= slice.runOptimize();
+    }
+    return answer;
+  }
+
+  /**
+   * Serialize the index: the number of slices, the existence bitmap and the slices.
+   *
+   * @param out the DataOutput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void serialize(DataOutput out) throws IOException {
+    out.writeInt(slices.length);
+    existenceBitmap.serialize(out);
+    for (RoaringBitmap slice : slices) {
+      slice.serialize(out);
+    }
+  }
+
+  /**
+   * Deserialize (retrieve) the index, the current content is lost.
+   *
+   * @param in the DataInput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void deserialize(DataInput in) throws IOException {
+    final int bitDepth = in.readInt();
+    final RoaringBitmap ebm = new RoaringBitmap();
+    ebm.deserialize(in);
+    final RoaringBitmap[] newSlices = new RoaringBitmap[bitDepth];
+    for (int k = 0; k < bitDepth; ++k) {
+      newSlices[k] = new RoaringBitmap();
+      newSlices[k].deserialize(in);
+    }
+    existenceBitmap = ebm;
+    slices = newSlices;
+  }
+
+  /**
+   * Report the number of bytes required to serialize the index.
+   *
+   * @return the size in bytes
+   */
+  public long serializedSizeInBytes() {
+    long size = 4 + existenceBitmap.serializedSizeInBytes();
+    for (RoaringBitmap slice : slices) {
+      size += slice.serializedSizeInBytes();
+    }
+    return size;
+  }
+}
@@ -479,6 +479,45 @@ public final class BufferUtil {
   }
 
 
+  /**
+   * Write the runs of consecutive set bits of the bitmap as (start, length - 1) pairs, see
+   * {@link Util#bitmapToRuns(long[], short[])}.
+   *
+   * @param bitmap array of words
+   * @param valueslength receives the runs, must hold two shorts per run
+   * @return the number of runs
+   */
+  public static int bitmapToRuns(LongBuffer bitmap, short[] valueslength) {
+    if (isBackedBySimpleArray(bitmap)) {
+      return Util.bitmapToRuns(bitmap.array(), valueslength);
+    }
+    int pos = 0;
+    int runStart = 0;
+    long carry = 0;
+    for (int k = 0; k < bitmap.limit(); ++k) {
+      final long w = bitmap.get(k);
+      long transitions = w ^ ((w << 1) | carry);
+      carry = w >>> 63;
+      while (transitions != 0) {
+        final int bit = Long.numberOfTrailingZeros(transitions);
+        final int p = (k << 6) + bit;
+        if (((w >>> bit) & 1) != 0) {
+          runStart = p;
+        } else {
+          valueslength[pos++] = (short) runStart;
+          valueslength[pos++] = (short) (p - runStart - 1);
+        }
+        transitions &= transitions - 1;
+      }
+    }
+    if (carry != 0) {
+      // the last run ends with the bitmap
+      valueslength[pos++] = (short) runStart;
+      valueslength[pos++] = (short) ((bitmap.limit() << 6) - runStart - 1);
+    }
+    return pos / 2;
+  }
+
   /**
    * set bits at start, start+1,..., end-1
    *
@@ -756,6 +795,12 @@ public final class BufferUtil {
 
   protected static int unsignedLocalIntersect2by2Cardinality(final ShortBuffer set1,
       final int length1, final ShortBuffer set2, final int length2) {
+    return unsignedLocalIntersect2by2Cardinality(set1, length1, set2, length2, Integer.MAX_VALUE);
+  }
+
+  // stops once the cardinality reaches the limit
+  protected static int unsignedLocalIntersect2by2Cardinality(final ShortBuffer set1,
+      final int length1, final ShortBuffer set2, final int length2, final int limit) {
     if ((0 == length1) || (0 == length2)) {
       return 0;
     }
@@ -787,6 +832,9 @@ public final class BufferUtil {
         } while (toIntUnsigned(s1) < toIntUnsigned(s2));
       } else {
         ++pos;
+        if (pos == limit) {
+          break;
+        }
         ++k1;
         if (k1 == length1) {
           break;
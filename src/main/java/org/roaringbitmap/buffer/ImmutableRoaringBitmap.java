@@ -193,9 +193,16 @@ public class ImmutableRoaringBitmap
   public static MutableRoaringBitmap and(@SuppressWarnings("rawtypes") final Iterator bitmaps,
       final long rangeStart, final long rangeEnd) {
     MutableRoaringBitmap.rangeSanityCheck(rangeStart,rangeEnd);
-    Iterator<ImmutableRoaringBitmap> bitmapsIterator;
-    bitmapsIterator = selectRangeWithoutCopy(bitmaps, rangeStart, rangeEnd);
-    return BufferFastAggregation.and(bitmapsIterator);
+    final MutableRoaringBitmap answer = new MutableRoaringBitmap();
+    if (!bitmaps.hasNext()) {
+      return answer;
+    }
+    answer.mergeRange((ImmutableRoaringBitmap) bitmaps.next(), rangeStart, rangeEnd, false);
+    // the answer lies within the range, so the other bitmaps need not be clipped
+    while (bitmaps.hasNext() && !answer.isEmpty()) {
+      answer.and((ImmutableRoaringBitmap) bitmaps.next());
+    }
+    return answer;
   }
 
   /**
@@ -304,9 +311,10 @@ public class ImmutableRoaringBitmap
   public static MutableRoaringBitmap andNot(final ImmutableRoaringBitmap x1,
       final ImmutableRoaringBitmap x2, long rangeStart, long rangeEnd) {
     MutableRoaringBitmap.rangeSanityCheck(rangeStart,rangeEnd);
-    MutableRoaringBitmap rb1 = selectRangeWithoutCopy(x1, rangeStart, rangeEnd);
-    MutableRoaringBitmap rb2 = selectRangeWithoutCopy(x2, rangeStart, rangeEnd);
-    return andNot(rb1, rb2);
+    final MutableRoaringBitmap answer = new MutableRoaringBitmap();
+    answer.mergeRange(x1, rangeStart, rangeEnd, false);
+    answer.andNot(x2);
+    return answer;
   }
 
 
@@ -473,123 +481,68 @@ public class ImmutableRoaringBitmap
 
 
   /**
-   * Return new iterator with only values from rangeStart (inclusive) to rangeEnd (exclusive)
-   * 
-   * @param input bitmaps iterator
-   * @param rangeStart inclusive
-   * @param rangeEnd exclusive
-   * @return new iterator of bitmaps
-   */
-  private static Iterator<ImmutableRoaringBitmap> selectRangeWithoutCopy(final Iterator bitmaps,
-      final long rangeStart, final long rangeEnd) {
-    Iterator<ImmutableRoaringBitmap> bitmapsIterator;
-    bitmapsIterator = new Iterator<ImmutableRoaringBitmap>() {
-      @Override
-      public boolean hasNext() {
-        return bitmaps.hasNext();
-      }
-
-      @Override
-      public ImmutableRoaringBitmap next() {
-        ImmutableRoaringBitmap next = (ImmutableRoaringBitmap) bitmaps.next();
-        return selectRangeWithoutCopy(next, rangeStart, rangeEnd);
-      }
-
-      @Override
-      public void remove() {
-        throw new UnsupportedOperationException("Remove not supported");
-      }
-    };
-    return bitmapsIterator;
-  }
-
-  /**
-   * 
-   * Extracts the values in the specified range, rangeStart (inclusive) and rangeEnd (exclusive)
-   * while avoiding copies as much as possible.
-   * 
-   * @param rb input bitmap
-   * @param rangeStart inclusive
-   * @param rangeEnd exclusive
-   * @return new bitmap
+   * Checks whether the two bitmaps intersect. This can be much faster than calling "and" and
+   * checking the cardinality of the result.
+   *
+   * @param x1 first bitmap
+   * @param x2 other bitmap
+   * @return true if they intersect
    */
+  public static boolean intersects(final ImmutableRoaringBitmap x1,
+      final ImmutableRoaringBitmap x2) {
+    int pos1 = 0, pos2 = 0;
+    final int length1 = x1.highLowContainer.size(), length2 = x2.highLowContainer.size();
 
-  private static MutableRoaringBitmap selectRangeWithoutCopy(ImmutableRoaringBitmap rb,
-      final long rangeStart, final long rangeEnd) {
-    final int hbStart = BufferUtil.toIntUnsigned(BufferUtil.highbits(rangeStart));
-    final int lbStart = BufferUtil.toIntUnsigned(BufferUtil.lowbits(rangeStart));
-    final int hbLast = BufferUtil.toIntUnsigned(BufferUtil.highbits(rangeEnd - 1));
-    final int lbLast = BufferUtil.toIntUnsigned(BufferUtil.lowbits(rangeEnd - 1));
-    MutableRoaringBitmap answer = new MutableRoaringBitmap();
-
-    if (rangeEnd <= rangeStart) {
-      return answer;
-    }
+    while (pos1 < length1 && pos2 < length2) {
+      final short s1 = x1.highLowContainer.getKeyAtIndex(pos1);
+      final short s2 = x2.highLowContainer.getKeyAtIndex(pos2);
 
-    if (hbStart == hbLast) {
-      final int i = rb.highLowContainer.getIndex((short) hbStart);
-      if (i >= 0) {
-        final MappeableContainer c = rb.highLowContainer.getContainerAtIndex(i).remove(0, lbStart)
-            .iremove(lbLast + 1, BufferUtil.maxLowBitAsInteger() + 1);
-        if (c.getCardinality() > 0) {
-          ((MutableRoaringArray) answer.highLowContainer).append((short) hbStart, c);
+      if (s1 == s2) {
+        final MappeableContainer c1 = x1.highLowContainer.getContainerAtIndex(pos1);
+        final MappeableContainer c2 = x2.highLowContainer.getContainerAtIndex(pos2);
+        if (c1.intersects(c2)) {
+          return true;
         }
-      }
-      return answer;
-    }
-    int ifirst = rb.highLowContainer.getIndex((short) hbStart);
-    int ilast = rb.highLowContainer.getIndex((short) hbLast);
-    if (ifirst >= 0) {
-      final MappeableContainer c =
-          rb.highLowContainer.getContainerAtIndex(ifirst).remove(0, lbStart);
-      if (c.getCardinality() > 0) {
-        ((MutableRoaringArray) answer.highLowContainer).append((short) hbStart, c);
-      }
-    }
-
-    for (int hb = hbStart + 1; hb <= hbLast - 1; ++hb) {
-      final int i = rb.highLowContainer.getIndex((short) hb);
-      final int j = answer.getMappeableRoaringArray().getIndex((short) hb);
-      assert j < 0;
-
-      if (i >= 0) {
-        final MappeableContainer c = rb.highLowContainer.getContainerAtIndex(i);
-        answer.getMappeableRoaringArray().insertNewKeyValueAt(-j - 1, (short) hb, c);
-      }
-    }
-
-    if (ilast >= 0) {
-      final MappeableContainer c = rb.highLowContainer.getContainerAtIndex(ilast).remove(lbLast + 1,
-          BufferUtil.maxLowBitAsInteger() + 1);
-      if (c.getCardinality() > 0) {
-        ((MutableRoaringArray) answer.highLowContainer).append((short) hbLast, c);
+        ++pos1;
+        ++pos2;
+      } else if (Util.compareUnsigned(s1, s2) < 0) { // s1 < s2
+        pos1 = x1.highLowContainer.advanceUntil(s2, pos1);
+      } else { // s1 > s2
+        pos2 = x2.highLowContainer.advanceUntil(s1, pos2);
       }
     }
-    return answer;
-
+    return false;
   }
 
   /**
-   * Checks whether the two bitmaps intersect. This can be much faster than calling "and" and
-   * checking the cardinality of the result.
+   * Checks whether the intersection of the two bitmaps holds at least limit values. Unlike
+   * andCardinality, this stops scanning the containers as soon as the limit is reached, so
+   * checking an overlap against a small threshold is much cheaper than counting it.
    *
    * @param x1 first bitmap
    * @param x2 other bitmap
-   * @return true if they intersect
+   * @param limit minimal cardinality of the intersection
+   * @return true if the intersection holds at least limit values
    */
-  public static boolean intersects(final ImmutableRoaringBitmap x1,
-      final ImmutableRoaringBitmap x2) {
-    int pos1 = 0, pos2 = 0;
+  public static boolean andCardinalityAtLeast(final ImmutableRoaringBitmap x1,
+      final ImmutableRoaringBitmap x2, final long limit) {
+    if (limit <= 0) {
+      return true;
+    } else if (limit == 1) {
+      return intersects(x1, x2);
+    }
+    long remaining = limit;
     final int length1 = x1.highLowContainer.size(), length2 = x2.highLowContainer.size();
+    int pos1 = 0, pos2 = 0;
 
     while (pos1 < length1 && pos2 < length2) {
       final short s1 = x1.highLowContainer.getKeyAtIndex(pos1);
       final short s2 = x2.highLowContainer.getKeyAtIndex(pos2);
-
       if (s1 == s2) {
         final MappeableContainer c1 = x1.highLowContainer.getContainerAtIndex(pos1);
         final MappeableContainer c2 = x2.highLowContainer.getContainerAtIndex(pos2);
-        if (c1.intersects(c2)) {
+        remaining -= c1.andCardinality(c2, (int) Math.min(remaining, Integer.MAX_VALUE));
+        if (remaining <= 0) {
           return true;
         }
         ++pos1;
@@ -741,9 +694,12 @@ public class ImmutableRoaringBitmap
   public static MutableRoaringBitmap or(@SuppressWarnings("rawtypes") final Iterator bitmaps,
       final long rangeStart, final long rangeEnd) {
     MutableRoaringBitmap.rangeSanityCheck(rangeStart, rangeEnd);
-    Iterator<ImmutableRoaringBitmap> bitmapsIterator;
-    bitmapsIterator = selectRangeWithoutCopy(bitmaps, rangeStart, rangeEnd);
-    return or(bitmapsIterator);
+    final MutableRoaringBitmap answer = new MutableRoaringBitmap();
+    while (bitmaps.hasNext()) {
+      answer.mergeRange((ImmutableRoaringBitmap) bitmaps.next(), rangeStart, rangeEnd, false);
+    }
+    answer.repairAfterLazy();
+    return answer;
   }
 
   /**
@@ -796,9 +752,12 @@ public class ImmutableRoaringBitmap
    */
   public static MutableRoaringBitmap xor(@SuppressWarnings("rawtypes") final Iterator bitmaps,
       final long rangeStart, final long rangeEnd) {
-    Iterator<ImmutableRoaringBitmap> bitmapsIterator;
-    bitmapsIterator = selectRangeWithoutCopy(bitmaps, rangeStart, rangeEnd);
-    return BufferFastAggregation.xor(bitmapsIterator);
+    MutableRoaringBitmap.rangeSanityCheck(rangeStart, rangeEnd);
+    final MutableRoaringBitmap answer = new MutableRoaringBitmap();
+    while (bitmaps.hasNext()) {
+      answer.mergeRange((ImmutableRoaringBitmap) bitmaps.next(), rangeStart, rangeEnd, true);
+    }
+    return answer;
   }
 
 
@@ -1186,6 +1145,97 @@ public class ImmutableRoaringBitmap
     return answer;
   }
 
+  /**
+   * Write the values of rank offset, offset + 1, ..., offset + count - 1 (in increasing order)
+   * into the provided array. Containers before the requested page are skipped using their
+   * cardinality, and only the values of the page are decoded. Ranks start at zero.
+   *
+   * @param offset rank of the first value to write (zero for the smallest value)
+   * @param count maximal number of values to write
+   * @param out array receiving the values, starting at index zero
+   * @return the number of values written, less than count if the bitmap has fewer values
+   */
+  public int slice(long offset, int count, int[] out) {
+    checkSliceArguments(offset, count, out);
+    final int size = highLowContainer.size();
+    int i = 0;
+    long skip = offset;
+    while (i < size && highLowContainer.getCardinality(i) <= skip) {
+      skip -= highLowContainer.getCardinality(i);
+      ++i;
+    }
+    int written = 0;
+    for (; i < size && written < count; ++i) {
+      final MappeableContainer c = highLowContainer.getContainerAtIndex(i);
+      final int start = (int) skip;
+      final int end = Math.min(c.getCardinality(), start + count - written);
+      final int mask = BufferUtil.toIntUnsigned(highLowContainer.getKeyAtIndex(i)) << 16;
+      fillRange(c, start, end, mask, out, written);
+      written += end - start;
+      skip = 0;
+    }
+    return written;
+  }
+
+  /**
+   * Write the values of reverse rank offset, offset + 1, ..., offset + count - 1 (in decreasing
+   * order) into the provided array: the reverse rank of the largest value is zero. Containers
+   * after the requested page are skipped using their cardinality, and only the values of the
+   * page are decoded.
+   *
+   * @param offset reverse rank of the first value to write (zero for the largest value)
+   * @param count maximal number of values to write
+   * @param out array receiving the values, starting at index zero
+   * @return the number of values written, less than count if the bitmap has fewer values
+   */
+  public int reverseSlice(long offset, int count, int[] out) {
+    checkSliceArguments(offset, count, out);
+    int i = highLowContainer.size() - 1;
+    long skip = offset;
+    while (i >= 0 && highLowContainer.getCardinality(i) <= skip) {
+      skip -= highLowContainer.getCardinality(i);
+      --i;
+    }
+    int written = 0;
+    for (; i >= 0 && written < count; --i) {
+      final MappeableContainer c = highLowContainer.getContainerAtIndex(i);
+      final int end = c.getCardinality() - (int) skip;
+      final int start = Math.max(0, end - (count - written));
+      final int mask = BufferUtil.toIntUnsigned(highLowContainer.getKeyAtIndex(i)) << 16;
+      fillRange(c, start, end, mask, out, written);
+      Util.reverse(out, written, written + end - start);
+      written += end - start;
+      skip = 0;
+    }
+    return written;
+  }
+
+  private static void checkSliceArguments(long offset, int count, int[] out) {
+    if (offset < 0) {
+      throw new IllegalArgumentException("negative offset " + offset);
+    }
+    if (count < 0 || count > out.length) {
+      throw new IllegalArgumentException(
+          "count " + count + " does not fit in an array of length " + out.length);
+    }
+  }
+
+  // writes the values of rank start, ..., end - 1 within the container at out[pos], ...
+  private static void fillRange(MappeableContainer c, int start, int end, int mask, int[] out,
+      int pos) {
+    if (start == 0 && end == c.getCardinality()) {
+      c.fillLeastSignificant16bits(out, pos, mask);
+      return;
+    }
+    final PeekableShortIterator it = c.getShortIterator();
+    if (start > 0) {
+      it.advanceIfNeeded(c.select(start));
+    }
+    for (int k = pos; k < pos + end - start; ++k) {
+      out[k] = it.nextAsInt() | mask;
+    }
+  }
+
   /**
    * Rank returns the number of integers that are smaller or equal to x (Rank(infinity) would be
    * GetCardinality()).
@@ -1202,8 +1252,10 @@ public class ImmutableRoaringBitmap
       short key = this.highLowContainer.getKeyAtIndex(i);
       if (Util.compareUnsigned(key, xhigh) < 0) {
         size += this.highLowContainer.getCardinality(i);
-      } else {
+      } else if (key == xhigh) {
         return size + this.highLowContainer.getContainerAtIndex(i).rank(BufferUtil.lowbits(x));
+      } else {
+        return size;
       }
     }
     return size;
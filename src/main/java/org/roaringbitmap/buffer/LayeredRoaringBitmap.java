@@ -0,0 +1,259 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.buffer;
+
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.Util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A bitmap that can be modified while its content stays in an ImmutableRoaringBitmap, typically
+ * mapped from a large file. Updates are recorded in two small in-memory delta bitmaps, the values
+ * added and the values removed, so that applying row deletes to a mapped index does not require
+ * copying it with {@link ImmutableRoaringBitmap#toMutableRoaringBitmap()}.
+ *
+ * The content of the bitmap is (base &cup; adds) \ removes. The deltas are kept minimal: adds
+ * never holds a value of the base and removes only holds values of the base. Reads such as
+ * {@link #snapshot()} apply the deltas container per container: only the containers whose key
+ * appears in a delta are computed, the other ones are the mapped containers of the base.
+ *
+ * <pre>
+ * {@code
+ *      LayeredRoaringBitmap rows = new LayeredRoaringBitmap(new ImmutableRoaringBitmap(mapped));
+ *      rows.remove(deletedRowId);
+ *      ImmutableRoaringBitmap live = rows.snapshot();
+ *      // from time to time, possibly from a background thread
+ *      rows.compact(new File("rows.1.bin"));
+ * }
+ * </pre>
+ *
+ * This class is thread-safe: {@link #compact(File)} only blocks the other methods while swapping
+ * the base, not while writing the new file.
+ */
+public class LayeredRoaringBitmap {
+
+  private ImmutableRoaringBitmap base;
+
+  private long baseCardinality;
+
+  private MutableRoaringBitmap adds = new MutableRoaringBitmap();
+
+  private MutableRoaringBitmap removes = new MutableRoaringBitmap();
+
+  // serializes the compactions, which do not hold the lock of this object while writing
+  private final Object compactionLock = new Object();
+
+  /**
+   * Create a layered bitmap over the provided base, which is never modified.
+   *
+   * @param base the initial content of the bitmap
+   */
+  public LayeredRoaringBitmap(final ImmutableRoaringBitmap base) {
+    this.base = base;
+    this.baseCardinality = base.getLongCardinality();
+  }
+
+  /**
+   * Add the value to the bitmap, whether it already appears or not.
+   *
+   * @param x integer value
+   */
+  public synchronized void add(final int x) {
+    removes.remove(x);
+    if (!base.contains(x)) {
+      adds.add(x);
+    }
+  }
+
+  /**
+   * If present remove the specified value.
+   *
+   * @param x integer value to remove
+   */
+  public synchronized void remove(final int x) {
+    adds.remove(x);
+    if (base.contains(x)) {
+      removes.add(x);
+    }
+  }
+
+  /**
+   * Checks whether the value in included.
+   *
+   * @param x integer value
+   * @return whether the integer value is included.
+   */
+  public synchronized boolean contains(final int x) {
+    return adds.contains(x) || (base.contains(x) && !removes.contains(x));
+  }
+
+  /**
+   * Returns the number of distinct integers in the bitmap.
+   *
+   * @return the cardinality
+   */
+  public synchronized long getLongCardinality() {
+    return baseCardinality + adds.getLongCardinality() - removes.getLongCardinality();
+  }
+
+  /**
+   * Returns the number of values held by the deltas, that is, the number of values a compaction
+   * would merge into the base.
+   *
+   * @return the number of values added or removed since the last compaction
+   */
+  public synchronized long getDeltaCardinality() {
+    return adds.getLongCardinality() + removes.getLongCardinality();
+  }
+
+  /**
+   * @return the immutable bitmap the deltas apply to
+   */
+  public synchronized ImmutableRoaringBitmap getBase() {
+    return base;
+  }
+
+  /**
+   * Returns the current content of the bitmap. The containers of the base whose key does not
+   * appear in the deltas are shared with the base, so this takes time proportional to the number
+   * of containers plus the size of the deltas. Later updates do not affect the result.
+   *
+   * @return the content of the bitmap
+   */
+  public synchronized ImmutableRoaringBitmap snapshot() {
+    return merge(base, adds, removes);
+  }
+
+  /**
+   * Copies the current content of the bitmap to a bitmap that can be modified.
+   *
+   * @return a mutable bitmap
+   */
+  public MutableRoaringBitmap toMutableRoaringBitmap() {
+    return snapshot().toMutableRoaringBitmap();
+  }
+
+  /**
+   * @return an iterator over the current content of the bitmap
+   */
+  public IntIterator getIntIterator() {
+    return snapshot().getIntIterator();
+  }
+
+  /**
+   * Serialize the current content of the bitmap, in the format of
+   * {@link MutableRoaringBitmap#serialize(DataOutput)}.
+   *
+   * @param out the DataOutput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void serialize(DataOutput out) throws IOException {
+    snapshot().serialize(out);
+  }
+
+  /**
+   * Merge the deltas into a new base: the content of the bitmap is written to the provided file,
+   * which is then memory-mapped and replaces the base. The bitmap can be read and updated by other
+   * threads while the file is written, only the final swap holds the lock of this object. Updates
+   * made during the compaction are kept as deltas over the new base.
+   *
+   * The file backing the previous base is not used anymore once this method returns, and it is
+   * up to the caller to delete it.
+   *
+   * @param file the file receiving the new base, overwritten if it exists
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void compact(final File file) throws IOException {
+    synchronized (compactionLock) {
+      final ImmutableRoaringBitmap merged;
+      final MutableRoaringBitmap adds0;
+      final MutableRoaringBitmap removes0;
+      synchronized (this) {
+        adds0 = adds.clone();
+        removes0 = removes.clone();
+        merged = merge(base, adds0, removes0);
+      }
+      final DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      try {
+        merged.serialize(out);
+      } finally {
+        out.close();
+      }
+      final RandomAccessFile raf = new RandomAccessFile(file, "r");
+      final MappedByteBuffer mapped;
+      try {
+        mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+      } finally {
+        raf.close();
+      }
+      final ImmutableRoaringBitmap newBase = new ImmutableRoaringBitmap(mapped);
+      synchronized (this) {
+        // the values added or removed since the snapshot of the deltas are kept, relative to the
+        // new base: values removed then added back, or added then removed, change side.
+        final MutableRoaringBitmap newAdds = ImmutableRoaringBitmap.andNot(adds, newBase);
+        newAdds.or(ImmutableRoaringBitmap.andNot(removes0, removes));
+        final MutableRoaringBitmap newRemoves = ImmutableRoaringBitmap.and(removes, newBase);
+        newRemoves.or(ImmutableRoaringBitmap.andNot(adds0, adds));
+        base = newBase;
+        baseCardinality = newBase.getLongCardinality();
+        adds = newAdds;
+        removes = newRemoves;
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return snapshot().toString();
+  }
+
+  // (base | adds) \ removes, sharing the containers of the base left unchanged
+  private static ImmutableRoaringBitmap merge(final ImmutableRoaringBitmap base,
+      final MutableRoaringBitmap adds, final MutableRoaringBitmap removes) {
+    final MutableRoaringBitmap answer = new MutableRoaringBitmap();
+    final MutableRoaringArray ra = answer.getMappeableRoaringArray();
+    final MutableRoaringArray removed = removes.getMappeableRoaringArray();
+    final MappeableContainerPointer i1 = base.highLowContainer.getContainerPointer();
+    final MappeableContainerPointer i2 = adds.highLowContainer.getContainerPointer();
+    while (i1.hasContainer() || i2.hasContainer()) {
+      final short key;
+      MappeableContainer c;
+      if (!i2.hasContainer()
+          || (i1.hasContainer() && Util.compareUnsigned(i1.key(), i2.key()) < 0)) {
+        key = i1.key();
+        c = i1.getContainer();
+        i1.advance();
+      } else if (!i1.hasContainer() || i1.key() != i2.key()) {
+        // removes only holds values of the base
+        ra.append(i2.key(), i2.getContainer().clone());
+        i2.advance();
+        continue;
+      } else {
+        key = i1.key();
+        c = i1.getContainer().or(i2.getContainer());
+        i1.advance();
+        i2.advance();
+      }
+      final int i = removed.getIndex(key);
+      if (i >= 0) {
+        c = c.andNot(removed.getContainerAtIndex(i));
+      }
+      if (c.getCardinality() > 0) {
+        ra.append(key, c);
+      }
+    }
+    return answer;
+  }
+}
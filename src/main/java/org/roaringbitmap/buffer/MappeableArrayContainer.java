@@ -955,7 +955,7 @@ public final class MappeableArrayContainer extends MappeableContainer implements
   }
 
   @Override
-  int numberOfRuns() {
+  public int numberOfRuns() {
     if (cardinality == 0) {
       return 0; // should never happen
     }
@@ -1463,6 +1463,23 @@ public final class MappeableArrayContainer extends MappeableContainer implements
         value2.content, value2.getCardinality());
   }
 
+  @Override
+  public int andCardinality(MappeableContainer x, int limit) {
+    if (x instanceof MappeableArrayContainer) {
+      final MappeableArrayContainer value2 = (MappeableArrayContainer) x;
+      if (BufferUtil.isBackedBySimpleArray(content)
+          && BufferUtil.isBackedBySimpleArray(value2.content)) {
+        return Util.unsignedLocalIntersect2by2Cardinality(content.array(), cardinality,
+            value2.content.array(), value2.getCardinality(), limit);
+      }
+      return BufferUtil.unsignedLocalIntersect2by2Cardinality(content, cardinality,
+          value2.content, value2.getCardinality(), limit);
+    } else if (x instanceof MappeableBitmapContainer) {
+      return ((MappeableBitmapContainer) x).andCardinality(this, limit);
+    }
+    return super.andCardinality(x, limit);
+  }
+
   @Override
   public int andCardinality(MappeableBitmapContainer x) {
     return x.andCardinality(this);
@@ -1316,7 +1316,7 @@ public final class MappeableBitmapContainer extends MappeableContainer implement
 
 
   @Override
-  int numberOfRuns() {
+  public int numberOfRuns() {
     if (BufferUtil.isBackedBySimpleArray(this.bitmap)) {
       long[] src = this.bitmap.array();
       int numRuns = 0;
@@ -1898,6 +1898,34 @@ public final class MappeableBitmapContainer extends MappeableContainer implement
     return x.andCardinality(this);
   }
 
+  @Override
+  public int andCardinality(MappeableContainer x, int limit) {
+    if (x instanceof MappeableBitmapContainer) {
+      final LongBuffer bitmap2 = ((MappeableBitmapContainer) x).bitmap;
+      int answer = 0;
+      final int size = this.bitmap.limit();
+      for (int k = 0; k < size; ++k) {
+        answer += Long.bitCount(this.bitmap.get(k) & bitmap2.get(k));
+        if (answer >= limit) {
+          return limit;
+        }
+      }
+      return answer;
+    } else if (x instanceof MappeableArrayContainer) {
+      return andCardinality((MappeableArrayContainer) x, limit);
+    }
+    return super.andCardinality(x, limit);
+  }
+
+  int andCardinality(final MappeableArrayContainer value2, final int limit) {
+    int answer = 0;
+    int c = value2.cardinality;
+    for (int k = 0; k < c && answer < limit; ++k) {
+      answer += this.bitValue(value2.content.get(k));
+    }
+    return answer;
+  }
+
   @Override
   public MappeableBitmapContainer toBitmapContainer() {
     return this;
@@ -109,6 +109,19 @@ public abstract class MappeableContainer implements Iterable<Short>, Cloneable,
     }
   }
 
+  /**
+   * Computes the cardinality of the intersection of this container with another one, stopping as
+   * soon as it reaches the limit. This container as well as the provided container are left
+   * unaffected.
+   *
+   * @param x other container
+   * @param limit cardinality beyond which the intersection need not be counted
+   * @return the cardinality of the intersection, or limit if it is larger
+   */
+  public int andCardinality(MappeableContainer x, int limit) {
+    return Math.min(andCardinality(x), limit);
+  }
+
   
   /**
    * Computes the bitwise AND of this container with another (intersection). This container as well
@@ -617,7 +630,12 @@ public abstract class MappeableContainer implements Iterable<Short>, Cloneable,
    */
   public abstract MappeableContainer not(int rangeStart, int rangeEnd);
 
-  abstract int numberOfRuns();
+  /**
+   * Computes the number of runs of consecutive values in the container.
+   *
+   * @return the number of runs
+   */
+  public abstract int numberOfRuns();
 
   /**
    * Computes the bitwise OR of this container with another (union). This container as well as the
@@ -1096,6 +1096,67 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
     }
   }
 
+  /**
+   * Merge the values of x2 within [rangeStart, rangeEnd) into this bitmap, either with a lazy
+   * union (repairAfterLazy() must be called afterward) or with a symmetric difference. The
+   * containers of x2 are visited in place between the key indexes of the range, and only the two
+   * boundary containers are clipped.
+   *
+   * @param x2 other bitmap, not modified
+   * @param rangeStart inclusive
+   * @param rangeEnd exclusive
+   * @param xor whether to compute the symmetric difference rather than the union
+   */
+  void mergeRange(final ImmutableRoaringBitmap x2, final long rangeStart, final long rangeEnd,
+      final boolean xor) {
+    if (rangeEnd <= rangeStart) {
+      return;
+    }
+    final int hbStart = BufferUtil.toIntUnsigned(BufferUtil.highbits(rangeStart));
+    final int lbStart = BufferUtil.toIntUnsigned(BufferUtil.lowbits(rangeStart));
+    final int hbLast = BufferUtil.toIntUnsigned(BufferUtil.highbits(rangeEnd - 1));
+    final int lbLast = BufferUtil.toIntUnsigned(BufferUtil.lowbits(rangeEnd - 1));
+    final int maxLowBit = BufferUtil.maxLowBitAsInteger();
+    int begin = x2.highLowContainer.getIndex((short) hbStart);
+    if (begin < 0) {
+      begin = -begin - 1;
+    }
+    int end = x2.highLowContainer.getIndex((short) hbLast);
+    end = end < 0 ? -end - 1 : end + 1;
+    int pos1 = -1;
+    for (int pos2 = begin; pos2 < end; ++pos2) {
+      final short s2 = x2.highLowContainer.getKeyAtIndex(pos2);
+      final MappeableContainer c2 = x2.highLowContainer.getContainerAtIndex(pos2);
+      MappeableContainer c = c2;
+      if (BufferUtil.toIntUnsigned(s2) == hbStart && lbStart > 0) {
+        c = c.remove(0, lbStart);
+      }
+      if (BufferUtil.toIntUnsigned(s2) == hbLast && lbLast < maxLowBit) {
+        c = c == c2 ? c.remove(lbLast + 1, maxLowBit + 1) : c.iremove(lbLast + 1, maxLowBit + 1);
+      }
+      if (c.getCardinality() == 0) {
+        continue;
+      }
+      pos1 = highLowContainer.advanceUntil(s2, pos1);
+      if (pos1 < highLowContainer.size() && highLowContainer.getKeyAtIndex(pos1) == s2) {
+        final MappeableContainer c1 = highLowContainer.getContainerAtIndex(pos1);
+        if (!xor) {
+          getMappeableRoaringArray().setContainerAtIndex(pos1, c1.lazyIOR(c));
+        } else {
+          final MappeableContainer x = c1.ixor(c);
+          if (x.getCardinality() > 0) {
+            getMappeableRoaringArray().setContainerAtIndex(pos1, x);
+          } else {
+            getMappeableRoaringArray().removeAtIndex(pos1--);
+          }
+        }
+      } else {
+        // boundary containers were already copied by the clipping
+        getMappeableRoaringArray().insertNewKeyValueAt(pos1, s2, c == c2 ? c2.clone() : c);
+      }
+    }
+  }
+
   // call repairAfterLazy on result, eventually
   // important: x2 should not have been computed lazily
   // this method is like lazyor except that it will convert
@@ -0,0 +1,242 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.buffer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * An append-friendly bitmap index made of immutable segments, in the spirit of log-structured
+ * merge trees. Each batch of ingested rows becomes a new segment holding, for each key (such as a
+ * column and one of its values), the serialized bitmap of the matching rows. A query ORs the
+ * bitmaps of the key in all the segments, using {@link BufferFastAggregation}.
+ *
+ * Segments have a level, starting at zero. As soon as mergeFactor segments share a level, they
+ * are merged into a single segment of the next level, so that the number of segments grows
+ * logarithmically with the number of batches while each row is rewritten a logarithmic number of
+ * times. Merges run on the provided Executor, typically a single background thread.
+ *
+ * <pre>
+ * {@code
+ *      SegmentedBitmapIndex<String> index =
+ *          new SegmentedBitmapIndex<String>(4, Executors.newSingleThreadExecutor());
+ *      Map<String, MutableRoaringBitmap> batch = new HashMap<String, MutableRoaringBitmap>();
+ *      batch.put("country=FR", MutableRoaringBitmap.bitmapOf(1000, 1003));
+ *      index.append(batch);
+ *      ImmutableRoaringBitmap rows = index.get("country=FR");
+ * }
+ * </pre>
+ *
+ * This class is thread-safe. Queries never block: they work on the list of segments current when
+ * they start, which is replaced but never modified by appends and merges.
+ *
+ * @param <K> type of the keys, such as a (column, value) pair, which must implement equals and
+ *        hashCode
+ */
+public class SegmentedBitmapIndex<K> {
+
+  private final int mergeFactor;
+
+  private final Executor merger;
+
+  private final Object mergeLock = new Object();
+
+  // replaced as a whole under the lock of this object, never modified
+  private volatile List<Segment<K>> segments = Collections.emptyList();
+
+  /**
+   * Create an empty index.
+   *
+   * @param mergeFactor number of segments of a level merged together, at least 2
+   * @param merger runs the merges in the background, if null the merges are run by
+   *        {@link #append(Map)}
+   */
+  public SegmentedBitmapIndex(final int mergeFactor, final Executor merger) {
+    if (mergeFactor < 2) {
+      throw new IllegalArgumentException("mergeFactor must be at least 2: " + mergeFactor);
+    }
+    this.mergeFactor = mergeFactor;
+    this.merger = merger;
+  }
+
+  /**
+   * Add a segment holding the provided bitmaps, then schedule the merges it allows. The bitmaps
+   * are serialized, so they can be modified or discarded once this method returns.
+   *
+   * @param batch bitmap of the rows matching each key, empty bitmaps are ignored
+   */
+  public void append(final Map<K, ? extends ImmutableRoaringBitmap> batch) {
+    final Segment<K> segment = new Segment<K>(batch, 0);
+    synchronized (this) {
+      final List<Segment<K>> next = new ArrayList<Segment<K>>(segments);
+      next.add(segment);
+      segments = Collections.unmodifiableList(next);
+    }
+    if (merger == null) {
+      merge();
+    } else {
+      merger.execute(new Runnable() {
+        @Override
+        public void run() {
+          merge();
+        }
+      });
+    }
+  }
+
+  /**
+   * Computes the bitmap of the rows matching the key, in all segments.
+   *
+   * @param key the key
+   * @return the bitmap of the rows, empty if the key is unknown
+   */
+  public ImmutableRoaringBitmap get(final K key) {
+    final List<ImmutableRoaringBitmap> bitmaps = new ArrayList<ImmutableRoaringBitmap>();
+    for (Segment<K> segment : segments) {
+      final ImmutableRoaringBitmap bitmap = segment.bitmaps.get(key);
+      if (bitmap != null) {
+        bitmaps.add(bitmap);
+      }
+    }
+    if (bitmaps.size() == 1) {
+      return bitmaps.get(0);
+    }
+    return BufferFastAggregation.or(bitmaps.toArray(new ImmutableRoaringBitmap[bitmaps.size()]));
+  }
+
+  /**
+   * @return the current number of segments
+   */
+  public int getSegmentCount() {
+    return segments.size();
+  }
+
+  /**
+   * Report the number of bytes taken by the serialized bitmaps of all segments.
+   *
+   * @return the size in bytes
+   */
+  public long serializedSizeInBytes() {
+    long size = 0;
+    for (Segment<K> segment : segments) {
+      size += segment.sizeInBytes;
+    }
+    return size;
+  }
+
+  /**
+   * Merge the segments until no level holds mergeFactor segments. This is called after each
+   * append, on the Executor if one was provided.
+   *
+   * @return whether some segments were merged
+   */
+  public boolean merge() {
+    boolean merged = false;
+    // merges are serialized, so the segments picked below are still there when replaced
+    synchronized (mergeLock) {
+      List<Segment<K>> candidates;
+      while ((candidates = pickCandidates(segments)) != null) {
+        final Segment<K> segment = merge(candidates);
+        synchronized (this) {
+          final List<Segment<K>> next = new ArrayList<Segment<K>>(segments);
+          next.removeAll(candidates);
+          next.add(segment);
+          segments = Collections.unmodifiableList(next);
+        }
+        merged = true;
+      }
+    }
+    return merged;
+  }
+
+  // the first mergeFactor segments of the lowest level holding that many, null if none
+  private List<Segment<K>> pickCandidates(final List<Segment<K>> current) {
+    final Map<Integer, List<Segment<K>>> levels = new HashMap<Integer, List<Segment<K>>>();
+    List<Segment<K>> answer = null;
+    for (Segment<K> segment : current) {
+      List<Segment<K>> level = levels.get(segment.level);
+      if (level == null) {
+        level = new ArrayList<Segment<K>>();
+        levels.put(segment.level, level);
+      }
+      level.add(segment);
+      if (level.size() == mergeFactor && (answer == null || segment.level < answer.get(0).level)) {
+        answer = new ArrayList<Segment<K>>(level);
+      }
+    }
+    return answer;
+  }
+
+  private Segment<K> merge(final List<Segment<K>> candidates) {
+    final Map<K, List<ImmutableRoaringBitmap>> perKey =
+        new HashMap<K, List<ImmutableRoaringBitmap>>();
+    for (Segment<K> segment : candidates) {
+      for (Map.Entry<K, ImmutableRoaringBitmap> e : segment.bitmaps.entrySet()) {
+        List<ImmutableRoaringBitmap> bitmaps = perKey.get(e.getKey());
+        if (bitmaps == null) {
+          bitmaps = new ArrayList<ImmutableRoaringBitmap>();
+          perKey.put(e.getKey(), bitmaps);
+        }
+        bitmaps.add(e.getValue());
+      }
+    }
+    final Map<K, MutableRoaringBitmap> merged = new HashMap<K, MutableRoaringBitmap>();
+    for (Map.Entry<K, List<ImmutableRoaringBitmap>> e : perKey.entrySet()) {
+      final List<ImmutableRoaringBitmap> bitmaps = e.getValue();
+      final MutableRoaringBitmap bitmap = BufferFastAggregation
+          .or(bitmaps.toArray(new ImmutableRoaringBitmap[bitmaps.size()]));
+      bitmap.runOptimize();
+      merged.put(e.getKey(), bitmap);
+    }
+    return new Segment<K>(merged, candidates.get(0).level + 1);
+  }
+
+  /**
+   * An immutable segment: the bitmaps are serialized one after the other in a single buffer.
+   */
+  static final class Segment<K> {
+
+    final Map<K, ImmutableRoaringBitmap> bitmaps;
+
+    final int level;
+
+    final long sizeInBytes;
+
+    Segment(final Map<K, ? extends ImmutableRoaringBitmap> batch, final int level) {
+      final List<K> keys = new ArrayList<K>();
+      final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      final DataOutputStream out = new DataOutputStream(bos);
+      try {
+        for (Map.Entry<K, ? extends ImmutableRoaringBitmap> e : batch.entrySet()) {
+          if (!e.getValue().isEmpty()) {
+            keys.add(e.getKey());
+            e.getValue().serialize(out);
+          }
+        }
+        out.flush();
+      } catch (IOException e) {
+        throw new RuntimeException("shouldn't happen with a ByteArrayOutputStream", e);
+      }
+      final ByteBuffer buffer = ByteBuffer.wrap(bos.toByteArray());
+      final Map<K, ImmutableRoaringBitmap> mapped = new HashMap<K, ImmutableRoaringBitmap>();
+      for (K key : keys) {
+        final ImmutableRoaringBitmap bitmap = new ImmutableRoaringBitmap(buffer);
+        mapped.put(key, bitmap);
+        buffer.position(buffer.position() + bitmap.serializedSizeInBytes());
+      }
+      this.bitmaps = Collections.unmodifiableMap(mapped);
+      this.level = level;
+      this.sizeInBytes = buffer.capacity();
+    }
+  }
+}
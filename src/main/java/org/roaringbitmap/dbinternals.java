@@ -7,19 +7,24 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class dbinternals {
 
+    private static final int PAGE_SIZE = 1024; // number of results decoded at a time
+
+    private static final int CONTAINERS_PER_TASK = 4; // containers evaluated by each parallel task
+
     public static void main(String[] args) {
 
         HashMap<String, HashMap> database = setUpBitmaps(); // get bitmaps created by column values
         int numberOfConstrains = 8; // number of constraints in the query
         int threshold = 3; // threshold of the constraints
         RoaringBitmap[] conditionBitmaps = new RoaringBitmap[numberOfConstrains];  // array of bitmaps corresponds to constraints in the query
-        int[] data = new int[8]; // A temporary array to store all combination one by on
-        ArrayList<RoaringBitmap> combinedBitmaps = new ArrayList<>();  // bitmaps result from AND operations of combinations
         int maxCardinality = 0; // get the maximum cardinality of constraint bitmaps
-        Iterator iterator; // Iterator object is require to do a OR operation between many bitmaps
         RoaringBitmap finalBitmap; // final bitmap after all operations
         long startTime; // variables for time calculations
         long duration;
@@ -43,78 +48,51 @@ public class dbinternals {
                 maxCardinality = (int) conditionBitmaps[i].getLongCardinality();
         }
 
-        Scanner s = new Scanner(System.in);
-        while (true){
-            System.out.print("Enter the threshold size : ");
-            threshold = s.nextInt();
-            startTime = System.nanoTime();
-            // find bitmaps result from AND operations of combinations
-            combinationUtility(conditionBitmaps, combinedBitmaps, data, 0, numberOfConstrains-1, 0, threshold, maxCardinality);
-            duration = System.nanoTime() - startTime;
-
-            // find the union of bitmaps result from AND operations of combinations
-            iterator = combinedBitmaps.iterator();
-            finalBitmap = RoaringBitmap.or(iterator, 1, maxCardinality);
-
-            System.out.println("\nFinal Results");
-            for(int i : finalBitmap) {
-                System.out.print(i + ", ");
-            }
-
-            System.out.println("\n\nExecution Time in ms : " + duration/1000000);
-        }
-
-        /*startTime = System.nanoTime();
-        // find bitmaps result from AND operations of combinations
-        combinationUtility(conditionBitmaps, combinedBitmaps, data, 0, numberOfConstrains-1, 0, threshold, maxCardinality);
-        duration = System.nanoTime() - startTime;
-
-        // find the union of bitmaps result from AND operations of combinations
-        iterator = combinedBitmaps.iterator();
-        finalBitmap = RoaringBitmap.or(iterator, 1, maxCardinality);
-
-        System.out.println("\nFinal Results");
-        for(int i : finalBitmap) {
-            System.out.print(i + ", ");
-        }
-
-        System.out.println("\n\nExecution Time in ms : " + duration/1000000);*/
-    }
-
-    static void combinationUtility(RoaringBitmap conditionBitmaps[], ArrayList<RoaringBitmap> combinedBitmaps, int data[], int start, int end, int index, int threshold, int maxCardinality) {
-
-        ArrayList<RoaringBitmap> localCombination = new ArrayList<>();  // to hold the bitmaps of a particular combination
-        Iterator itr; // Iterator object is required to do ALL operation between many bitmaps
-
-        // Another combination is formed
-        if (index == threshold) {
-            //System.out.println("\nCombination No : " + (combinedBitmaps.size() + 1));
+        // the query is evaluated in parallel, one slice of containers per task
+        final RoaringBitmap[] bitmaps = conditionBitmaps;
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        AsyncQueryExecutor executor = new AsyncQueryExecutor(pool, CONTAINERS_PER_TASK);
 
-            // add the bitmaps correspond to this combination into localCombination ArrayList
-            for (int j=0; j<threshold; j++) {
-                //System.out.printf("%d ", data[j]);
-                localCombination.add(conditionBitmaps[data[j]-1]);
-            }
-            //System.out.println();
-
-            // do ALL operation between bitmaps correspond to this combination and add the resulting bitmap to combinedBitmaps List
-            itr = localCombination.iterator();
-            combinedBitmaps.add(RoaringBitmap.and(itr, 1, maxCardinality));
+        Scanner s = new Scanner(System.in);
+        try {
+            while (true){
+                System.out.print("Enter the threshold size : ");
+                threshold = s.nextInt();
+                final int t = threshold;
+                startTime = System.nanoTime();
+                Future<RoaringBitmap> result = executor.submit(new AsyncQueryExecutor.RangeQuery() {
+                    @Override
+                    public RoaringBitmap evaluate(long rangeStart, long rangeEnd) {
+                        // the union of the AND operations of all combinations, computed in a single pass
+                        // over the containers of each key instead of combination by combination
+                        return FastAggregation.threshold(t, rangeStart, rangeEnd, bitmaps);
+                    }
+                }, 1, maxCardinality);
+                try {
+                    finalBitmap = result.get();
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                    continue;
+                }
+                duration = System.nanoTime() - startTime;
+
+                System.out.println("\nFinal Results");
+                // decode the results one page at a time
+                int[] page = new int[PAGE_SIZE];
+                for (long offset = 0; ; offset += PAGE_SIZE) {
+                    int n = finalBitmap.slice(offset, PAGE_SIZE, page);
+                    for (int i = 0; i < n; i++) {
+                        System.out.print(page[i] + ", ");
+                    }
+                    if (n < PAGE_SIZE)
+                        break;
+                }
 
-            for(int i : combinedBitmaps.get(combinedBitmaps.size()-1)) {
-                //System.out.print(i + ", ");
+                System.out.println("\n\nExecution Time in ms : " + duration/1000000);
             }
-            //System.out.println();
-            return;
-        }
-
-        /*replace index with all possible elements. The condition
-         "end-i+1 >= r-index" makes sure that including one element
-         at index will make a combination with remaining elements
-         at remaining positions*/
-        for (int i=start; i<=end && end-i+1 >= threshold-index; i++) {
-            data[index] = i+1;
-            combinationUtility(conditionBitmaps, combinedBitmaps, data, i+1, end, index+1, threshold, maxCardinality);
+        } finally {
+            // the threads of the pool would otherwise keep the JVM alive once the input ends
+            pool.shutdownNow();
         }
     }
 
@@ -143,16 +121,16 @@ public class dbinternals {
 
             Set result = new HashSet(column);
             for (Object s : result) {
-                ArrayList<Integer> exist_ids = new ArrayList<>();
+                // row ids are visited in increasing order, so they can be appended directly
+                RoaringBitmapWriter writer = new RoaringBitmapWriter();
                 for(int i=0;i<column.size();i++)
                 {
                     if(s.toString().equals(column.get(i)))
                     {
-                        exist_ids.add(i+1);
+                        writer.add(i+1);
                     }
                 }
-                RoaringBitmap rr = RoaringBitmap.bitmapOf(exist_ids);
-                exist_ids.clear();
+                RoaringBitmap rr = writer.get();
                 attribute_bitmap.put(s.toString(),rr);
             }
             database.put(column_names[column_count], attribute_bitmap);
@@ -0,0 +1,167 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.longlong;
+
+import org.roaringbitmap.ImmutableBitmapDataProvider;
+import org.roaringbitmap.IntIterator;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * Read-only operations shared by the 64-bit bitmaps, over a sorted map from the 32 most
+ * significant bits to a non-empty 32-bit bitmap holding the 32 least significant bits.
+ */
+final class Buckets {
+
+  private Buckets() {
+  }
+
+  static boolean contains(NavigableMap<Integer, ? extends ImmutableBitmapDataProvider> buckets,
+      long x) {
+    final ImmutableBitmapDataProvider bucket = buckets.get(RoaringIntPacking.high(x));
+    return bucket != null && bucket.contains(RoaringIntPacking.low(x));
+  }
+
+  static long getLongCardinality(
+      NavigableMap<Integer, ? extends ImmutableBitmapDataProvider> buckets) {
+    long answer = 0;
+    for (ImmutableBitmapDataProvider bucket : buckets.values()) {
+      answer += bucket.getLongCardinality();
+    }
+    return answer;
+  }
+
+  static long rankLong(NavigableMap<Integer, ? extends ImmutableBitmapDataProvider> buckets,
+      long x) {
+    final int high = RoaringIntPacking.high(x);
+    long answer = 0;
+    for (ImmutableBitmapDataProvider bucket : buckets.headMap(high, false).values()) {
+      answer += bucket.getLongCardinality();
+    }
+    final ImmutableBitmapDataProvider bucket = buckets.get(high);
+    if (bucket != null) {
+      answer += bucket.rankLong(RoaringIntPacking.low(x));
+    }
+    return answer;
+  }
+
+  static long select(NavigableMap<Integer, ? extends ImmutableBitmapDataProvider> buckets,
+      long j) {
+    long leftover = j;
+    if (leftover >= 0) {
+      for (Map.Entry<Integer, ? extends ImmutableBitmapDataProvider> e : buckets.entrySet()) {
+        final long cardinality = e.getValue().getLongCardinality();
+        if (leftover < cardinality) {
+          return RoaringIntPacking.pack(e.getKey(), e.getValue().select((int) leftover));
+        }
+        leftover -= cardinality;
+      }
+    }
+    throw new IllegalArgumentException(
+        "select " + j + " when the cardinality is " + getLongCardinality(buckets));
+  }
+
+  static LongIterator iterator(
+      NavigableMap<Integer, ? extends ImmutableBitmapDataProvider> buckets, boolean reverse) {
+    return new BucketIterator(reverse ? buckets.descendingMap() : buckets, reverse);
+  }
+
+  static LongBatchIterator batchIterator(
+      NavigableMap<Integer, ? extends ImmutableBitmapDataProvider> buckets) {
+    final BucketIterator it = new BucketIterator(buckets, false);
+    return new LongBatchIterator() {
+      @Override
+      public boolean hasNext() {
+        return it.hasNext();
+      }
+
+      @Override
+      public int nextBatch(long[] buffer) {
+        int n = 0;
+        while (n < buffer.length && it.hasNext()) {
+          n += it.nextBatch(buffer, n);
+        }
+        return n;
+      }
+    };
+  }
+
+  static String toString(NavigableMap<Integer, ? extends ImmutableBitmapDataProvider> buckets) {
+    final StringBuilder answer = new StringBuilder();
+    final LongIterator i = iterator(buckets, false);
+    answer.append("{");
+    if (i.hasNext()) {
+      answer.append(RoaringIntPacking.toUnsignedString(i.next()));
+    }
+    while (i.hasNext()) {
+      answer.append(",");
+      // to avoid using too much memory, we limit the size
+      if (answer.length() > 0x80000) {
+        answer.append("...");
+        break;
+      }
+      answer.append(RoaringIntPacking.toUnsignedString(i.next()));
+    }
+    answer.append("}");
+    return answer.toString();
+  }
+
+  private static final class BucketIterator implements LongIterator {
+
+    private final Iterator<? extends Map.Entry<Integer, ? extends ImmutableBitmapDataProvider>>
+        entries;
+
+    private final boolean reverse;
+
+    private long high;
+
+    private IntIterator current;
+
+    BucketIterator(NavigableMap<Integer, ? extends ImmutableBitmapDataProvider> buckets,
+        boolean reverse) {
+      this.entries = buckets.entrySet().iterator();
+      this.reverse = reverse;
+      nextBucket();
+    }
+
+    private void nextBucket() {
+      current = null;
+      if (entries.hasNext()) {
+        final Map.Entry<Integer, ? extends ImmutableBitmapDataProvider> e = entries.next();
+        high = (long) e.getKey() << 32;
+        current = reverse ? e.getValue().getReverseIntIterator() : e.getValue().getIntIterator();
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return current != null;
+    }
+
+    @Override
+    public long next() {
+      final long answer = high | (current.next() & 0xFFFFFFFFL);
+      if (!current.hasNext()) {
+        nextBucket();
+      }
+      return answer;
+    }
+
+    // decodes values of the current bucket into buffer[pos], ...
+    int nextBatch(long[] buffer, int pos) {
+      int k = pos;
+      final IntIterator it = current;
+      while (k < buffer.length && it.hasNext()) {
+        buffer[k++] = high | (it.next() & 0xFFFFFFFFL);
+      }
+      if (!it.hasNext()) {
+        nextBucket();
+      }
+      return k - pos;
+    }
+  }
+}
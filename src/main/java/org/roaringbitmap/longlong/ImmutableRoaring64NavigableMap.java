@@ -0,0 +1,160 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.longlong;
+
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * An immutable 64-bit bitmap backed by a ByteBuffer, for example a memory-mapped file holding a
+ * serialized {@link Roaring64NavigableMap}. Only the bucket keys and the container meta-data
+ * are loaded to RAM: each bucket is an ImmutableRoaringBitmap mapped to the ByteBuffer.
+ *
+ * <pre>
+ * {@code
+ *      ImmutableRoaring64NavigableMap rb = new ImmutableRoaring64NavigableMap(mappedBuffer);
+ *      if (rb.contains(5000000000L)) {
+ *        // ...
+ *      }
+ *      Roaring64NavigableMap mutable = rb.toRoaring64NavigableMap();
+ * }
+ * </pre>
+ */
+public class ImmutableRoaring64NavigableMap {
+
+  private final NavigableMap<Integer, ImmutableRoaringBitmap> highToBitmap =
+      new TreeMap<>(RoaringIntPacking.unsignedComparator());
+
+  private final long serializedSizeInBytes;
+
+  /**
+   * Constructs a new ImmutableRoaring64NavigableMap starting at this ByteBuffer's position(),
+   * as written by {@link Roaring64NavigableMap#serialize(java.io.DataOutput)}. The provided
+   * ByteBuffer is not modified.
+   *
+   * @param b data source
+   */
+  public ImmutableRoaring64NavigableMap(final ByteBuffer b) {
+    final ByteBuffer buffer = b.slice();
+    // the header written with a DataOutput is big endian
+    final int size = buffer.getInt(0);
+    int pos = 4;
+    for (int k = 0; k < size; ++k) {
+      final int high = buffer.getInt(pos);
+      buffer.position(pos + 4);
+      final ImmutableRoaringBitmap bitmap = new ImmutableRoaringBitmap(buffer);
+      highToBitmap.put(high, bitmap);
+      pos += 4 + bitmap.serializedSizeInBytes();
+    }
+    serializedSizeInBytes = pos;
+  }
+
+  /**
+   * Checks whether the value in included.
+   *
+   * @param x long value
+   * @return whether the long value is included.
+   */
+  public boolean contains(final long x) {
+    return Buckets.contains(highToBitmap, x);
+  }
+
+  /**
+   * Returns the number of distinct values in the bitmap (e.g., number of bits set).
+   *
+   * @return the cardinality
+   */
+  public long getLongCardinality() {
+    return Buckets.getLongCardinality(highToBitmap);
+  }
+
+  /**
+   * Checks whether the bitmap is empty.
+   *
+   * @return true if this bitmap contains no set bit
+   */
+  public boolean isEmpty() {
+    return highToBitmap.isEmpty();
+  }
+
+  /**
+   * Rank returns the number of values that are smaller or equal to x (Rank(infinity) would be
+   * GetCardinality()).
+   *
+   * @param x upper limit
+   * @return the rank
+   */
+  public long rankLong(final long x) {
+    return Buckets.rankLong(highToBitmap, x);
+  }
+
+  /**
+   * Return the jth value stored in this bitmap.
+   *
+   * @param j index of the value, starting at zero
+   * @return the value
+   * @throws IllegalArgumentException if j is negative or not smaller than the cardinality
+   */
+  public long select(final long j) {
+    return Buckets.select(highToBitmap, j);
+  }
+
+  /**
+   * @return an iterator over the values in increasing (unsigned) order
+   */
+  public LongIterator getLongIterator() {
+    return Buckets.iterator(highToBitmap, false);
+  }
+
+  /**
+   * @return an iterator over the values in decreasing (unsigned) order
+   */
+  public LongIterator getReverseLongIterator() {
+    return Buckets.iterator(highToBitmap, true);
+  }
+
+  /**
+   * @return an iterator writing the values in increasing (unsigned) order a batch at a time
+   */
+  public LongBatchIterator getBatchIterator() {
+    return Buckets.batchIterator(highToBitmap);
+  }
+
+  /**
+   * Report the number of bytes of the serialized bitmap in the ByteBuffer.
+   *
+   * @return the size in bytes
+   */
+  public long serializedSizeInBytes() {
+    return serializedSizeInBytes;
+  }
+
+  /**
+   * Copies the content of this bitmap to a bitmap that can be modified.
+   *
+   * @return a mutable bitmap.
+   */
+  public Roaring64NavigableMap toRoaring64NavigableMap() {
+    final Roaring64NavigableMap answer = new Roaring64NavigableMap();
+    for (Map.Entry<Integer, ImmutableRoaringBitmap> e : highToBitmap.entrySet()) {
+      answer.highToBitmap.put(e.getKey(), e.getValue().toRoaringBitmap());
+    }
+    return answer;
+  }
+
+  /**
+   * A string describing the bitmap.
+   *
+   * @return the string
+   */
+  @Override
+  public String toString() {
+    return Buckets.toString(highToBitmap);
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.longlong;
+
+/**
+ * An iterator writing the values of a bitmap into a caller-provided buffer, in increasing
+ * (unsigned) order, so that the values are decoded a batch at a time.
+ *
+ * <pre>
+ * {@code
+ *      long[] buffer = new long[256];
+ *      LongBatchIterator it = bitmap.getBatchIterator();
+ *      while (it.hasNext()) {
+ *        int n = it.nextBatch(buffer);
+ *        // process buffer[0], ..., buffer[n - 1]
+ *      }
+ * }
+ * </pre>
+ */
+public interface LongBatchIterator {
+
+  /**
+   * @return whether there is another value
+   */
+  boolean hasNext();
+
+  /**
+   * Write the next values into the buffer, starting at index zero.
+   *
+   * @param buffer array receiving the values
+   * @return the number of values written, zero when the iteration is over
+   */
+  int nextBatch(long[] buffer);
+
+}
@@ -0,0 +1,22 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.longlong;
+
+/**
+ * A simple iterator over long values, avoiding the overhead of the Long class.
+ */
+public interface LongIterator {
+
+  /**
+   * @return whether there is another value
+   */
+  boolean hasNext();
+
+  /**
+   * @return next long value
+   */
+  long next();
+
+}
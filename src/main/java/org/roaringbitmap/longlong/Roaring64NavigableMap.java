@@ -0,0 +1,386 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.longlong;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A compressed bitmap over 64-bit values, such as the row ids of tables having more than 2^32
+ * rows. Values are split into their 32 most significant bits, used as keys of a sorted map, and
+ * their 32 least significant bits, stored in a RoaringBitmap.
+ *
+ * Values are ordered as unsigned 64-bit integers, like RoaringBitmap orders its values as
+ * unsigned 32-bit integers.
+ *
+ * <pre>
+ * {@code
+ *      Roaring64NavigableMap r1 = Roaring64NavigableMap.bitmapOf(1L, 5L, 1L << 35);
+ *      Roaring64NavigableMap r2 = Roaring64NavigableMap.bitmapOf(5L, 1L << 35, 1L << 40);
+ *      r1.and(r2); // r1 is now {5, 34359738368}
+ *
+ *      DataOutputStream wheretoserialize = ...
+ *      r1.runOptimize(); // can help compression
+ *      r1.serialize(wheretoserialize);
+ * }
+ * </pre>
+ *
+ * The serialized form is a 32-bit count of non-empty buckets followed, for each bucket in
+ * increasing order, by its 32-bit key and the bucket in the portable RoaringBitmap format. It
+ * can be mapped without deserialization with {@link ImmutableRoaring64NavigableMap}.
+ */
+public class Roaring64NavigableMap implements Cloneable, Externalizable {
+
+  private static final long serialVersionUID = 1L;
+
+  // never holds an empty bitmap
+  NavigableMap<Integer, RoaringBitmap> highToBitmap;
+
+  /**
+   * Create an empty bitmap
+   */
+  public Roaring64NavigableMap() {
+    highToBitmap = new TreeMap<>(RoaringIntPacking.unsignedComparator());
+  }
+
+  /**
+   * Generate a bitmap with the specified values set to true. The provided values don't have to be
+   * in sorted order, but it may be preferable to sort them from a performance point of view.
+   *
+   * @param dat set values
+   * @return a new bitmap
+   */
+  public static Roaring64NavigableMap bitmapOf(final long... dat) {
+    final Roaring64NavigableMap ans = new Roaring64NavigableMap();
+    ans.add(dat);
+    return ans;
+  }
+
+  /**
+   * Add the value to the container (set the value to "true"), whether it already appears or not.
+   *
+   * @param x long value
+   */
+  public void addLong(final long x) {
+    final int high = RoaringIntPacking.high(x);
+    RoaringBitmap bitmap = highToBitmap.get(high);
+    if (bitmap == null) {
+      bitmap = new RoaringBitmap();
+      highToBitmap.put(high, bitmap);
+    }
+    bitmap.add(RoaringIntPacking.low(x));
+  }
+
+  /**
+   * Set all the specified values to true. This can be expected to be slightly faster than calling
+   * "addLong" repeatedly, since consecutive values usually share their bucket.
+   *
+   * @param dat set values
+   */
+  public void add(final long... dat) {
+    RoaringBitmap bitmap = null;
+    int currentHigh = 0;
+    for (final long x : dat) {
+      final int high = RoaringIntPacking.high(x);
+      if (bitmap == null || high != currentHigh) {
+        bitmap = highToBitmap.get(high);
+        if (bitmap == null) {
+          bitmap = new RoaringBitmap();
+          highToBitmap.put(high, bitmap);
+        }
+        currentHigh = high;
+      }
+      bitmap.add(RoaringIntPacking.low(x));
+    }
+  }
+
+  /**
+   * If present remove the specified value.
+   *
+   * @param x long value to remove
+   */
+  public void removeLong(final long x) {
+    final int high = RoaringIntPacking.high(x);
+    final RoaringBitmap bitmap = highToBitmap.get(high);
+    if (bitmap != null) {
+      bitmap.remove(RoaringIntPacking.low(x));
+      if (bitmap.isEmpty()) {
+        highToBitmap.remove(high);
+      }
+    }
+  }
+
+  /**
+   * Checks whether the value in included.
+   *
+   * @param x long value
+   * @return whether the long value is included.
+   */
+  public boolean contains(final long x) {
+    return Buckets.contains(highToBitmap, x);
+  }
+
+  /**
+   * Returns the number of distinct values added to the bitmap (e.g., number of bits set).
+   *
+   * @return the cardinality
+   */
+  public long getLongCardinality() {
+    return Buckets.getLongCardinality(highToBitmap);
+  }
+
+  /**
+   * Checks whether the bitmap is empty.
+   *
+   * @return true if this bitmap contains no set bit
+   */
+  public boolean isEmpty() {
+    return highToBitmap.isEmpty();
+  }
+
+  /**
+   * Rank returns the number of values that are smaller or equal to x (Rank(infinity) would be
+   * GetCardinality()).
+   *
+   * @param x upper limit
+   * @return the rank
+   */
+  public long rankLong(final long x) {
+    return Buckets.rankLong(highToBitmap, x);
+  }
+
+  /**
+   * Return the jth value stored in this bitmap.
+   *
+   * @param j index of the value, starting at zero
+   * @return the value
+   * @throws IllegalArgumentException if j is negative or not smaller than the cardinality
+   */
+  public long select(final long j) {
+    return Buckets.select(highToBitmap, j);
+  }
+
+  /**
+   * @return an iterator over the values in increasing (unsigned) order
+   */
+  public LongIterator getLongIterator() {
+    return Buckets.iterator(highToBitmap, false);
+  }
+
+  /**
+   * @return an iterator over the values in decreasing (unsigned) order
+   */
+  public LongIterator getReverseLongIterator() {
+    return Buckets.iterator(highToBitmap, true);
+  }
+
+  /**
+   * @return an iterator writing the values in increasing (unsigned) order a batch at a time
+   */
+  public LongBatchIterator getBatchIterator() {
+    return Buckets.batchIterator(highToBitmap);
+  }
+
+  /**
+   * In-place bitwise AND (intersection) operation. The current bitmap is modified.
+   *
+   * @param x2 other bitmap
+   */
+  public void and(final Roaring64NavigableMap x2) {
+    final Iterator<Map.Entry<Integer, RoaringBitmap>> it = highToBitmap.entrySet().iterator();
+    while (it.hasNext()) {
+      final Map.Entry<Integer, RoaringBitmap> e = it.next();
+      final RoaringBitmap other = x2.highToBitmap.get(e.getKey());
+      if (other == null) {
+        it.remove();
+      } else {
+        e.getValue().and(other);
+        if (e.getValue().isEmpty()) {
+          it.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * In-place bitwise ANDNOT (difference) operation. The current bitmap is modified.
+   *
+   * @param x2 other bitmap
+   */
+  public void andNot(final Roaring64NavigableMap x2) {
+    for (Map.Entry<Integer, RoaringBitmap> e : x2.highToBitmap.entrySet()) {
+      final RoaringBitmap bitmap = highToBitmap.get(e.getKey());
+      if (bitmap != null) {
+        bitmap.andNot(e.getValue());
+        if (bitmap.isEmpty()) {
+          highToBitmap.remove(e.getKey());
+        }
+      }
+    }
+  }
+
+  /**
+   * In-place bitwise OR (union) operation. The current bitmap is modified.
+   *
+   * @param x2 other bitmap
+   */
+  public void or(final Roaring64NavigableMap x2) {
+    for (Map.Entry<Integer, RoaringBitmap> e : x2.highToBitmap.entrySet()) {
+      final RoaringBitmap bitmap = highToBitmap.get(e.getKey());
+      if (bitmap == null) {
+        highToBitmap.put(e.getKey(), e.getValue().clone());
+      } else {
+        bitmap.or(e.getValue());
+      }
+    }
+  }
+
+  /**
+   * In-place bitwise XOR (symmetric difference) operation. The current bitmap is modified.
+   *
+   * @param x2 other bitmap
+   */
+  public void xor(final Roaring64NavigableMap x2) {
+    for (Map.Entry<Integer, RoaringBitmap> e : x2.highToBitmap.entrySet()) {
+      final RoaringBitmap bitmap = highToBitmap.get(e.getKey());
+      if (bitmap == null) {
+        highToBitmap.put(e.getKey(), e.getValue().clone());
+      } else {
+        bitmap.xor(e.getValue());
+        if (bitmap.isEmpty()) {
+          highToBitmap.remove(e.getKey());
+        }
+      }
+    }
+  }
+
+  /**
+   * Use a run-length encoding where it is more space efficient
+   *
+   * @return whether a change was applied
+   */
+  public boolean runOptimize() {
+    boolean answer = false;
+    for (RoaringBitmap bitmap : highToBitmap.values()) {
+      answer |= bitmap.runOptimize();
+    }
+    return answer;
+  }
+
+  /**
+   * Estimate of the memory usage of this data structure.
+   *
+   * @return estimated memory usage.
+   */
+  public long getLongSizeInBytes() {
+    // a key and a map entry per bucket
+    long size = 8;
+    for (RoaringBitmap bitmap : highToBitmap.values()) {
+      size += 40 + bitmap.getLongSizeInBytes();
+    }
+    return size;
+  }
+
+  /**
+   * Serialize this bitmap, see the class documentation for the format.
+   *
+   * @param out the DataOutput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void serialize(DataOutput out) throws IOException {
+    out.writeInt(highToBitmap.size());
+    for (Map.Entry<Integer, RoaringBitmap> e : highToBitmap.entrySet()) {
+      out.writeInt(e.getKey());
+      e.getValue().serialize(out);
+    }
+  }
+
+  /**
+   * Deserialize (retrieve) this bitmap, the current content is lost.
+   *
+   * @param in the DataInput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void deserialize(DataInput in) throws IOException {
+    highToBitmap.clear();
+    final int size = in.readInt();
+    for (int k = 0; k < size; ++k) {
+      final int high = in.readInt();
+      final RoaringBitmap bitmap = new RoaringBitmap();
+      bitmap.deserialize(in);
+      highToBitmap.put(high, bitmap);
+    }
+  }
+
+  /**
+   * Report the number of bytes required to serialize this bitmap.
+   *
+   * @return the size in bytes
+   */
+  public long serializedSizeInBytes() {
+    long size = 4;
+    for (RoaringBitmap bitmap : highToBitmap.values()) {
+      size += 4 + bitmap.serializedSizeInBytes();
+    }
+    return size;
+  }
+
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    serialize(out);
+  }
+
+  @Override
+  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    deserialize(in);
+  }
+
+  @Override
+  public Roaring64NavigableMap clone() {
+    try {
+      final Roaring64NavigableMap x = (Roaring64NavigableMap) super.clone();
+      x.highToBitmap = new TreeMap<>(RoaringIntPacking.unsignedComparator());
+      for (Map.Entry<Integer, RoaringBitmap> e : highToBitmap.entrySet()) {
+        x.highToBitmap.put(e.getKey(), e.getValue().clone());
+      }
+      return x;
+    } catch (final CloneNotSupportedException e) {
+      throw new RuntimeException("shouldn't happen with clone", e);
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o instanceof Roaring64NavigableMap) {
+      return highToBitmap.equals(((Roaring64NavigableMap) o).highToBitmap);
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return highToBitmap.hashCode();
+  }
+
+  /**
+   * A string describing the bitmap.
+   *
+   * @return the string
+   */
+  @Override
+  public String toString() {
+    return Buckets.toString(highToBitmap);
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.longlong;
+
+import java.util.Comparator;
+
+/**
+ * Splits 64-bit values into the 32 most significant bits, used as keys, and the 32 least
+ * significant bits, stored in 32-bit bitmaps.
+ */
+final class RoaringIntPacking {
+
+  // orders the keys as unsigned integers, so that iterating the buckets gives the values in
+  // increasing unsigned order
+  private static final Comparator<Integer> UNSIGNED_COMPARATOR = new Comparator<Integer>() {
+    @Override
+    public int compare(Integer o1, Integer o2) {
+      return compareUnsigned(o1, o2);
+    }
+  };
+
+  private RoaringIntPacking() {
+  }
+
+  static int high(long x) {
+    return (int) (x >>> 32);
+  }
+
+  static int low(long x) {
+    return (int) x;
+  }
+
+  static long pack(int high, int low) {
+    return ((long) high << 32) | (low & 0xFFFFFFFFL);
+  }
+
+  static int compareUnsigned(int a, int b) {
+    return Integer.compare(a + Integer.MIN_VALUE, b + Integer.MIN_VALUE);
+  }
+
+  static String toUnsignedString(long x) {
+    if (x >= 0) {
+      return Long.toString(x);
+    }
+    final long quotient = (x >>> 1) / 5;
+    return Long.toString(quotient) + (x - quotient * 10);
+  }
+
+  static Comparator<Integer> unsignedComparator() {
+    return UNSIGNED_COMPARATOR;
+  }
+}
@@ -0,0 +1,114 @@
+package org.roaringbitmap;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestAggregation {
+
+    // a mix of array, bitmap and run containers, some keys being absent
+    private static RoaringBitmap randomBitmap(Random r) {
+        RoaringBitmap rb = new RoaringBitmap();
+        for (int key = 0; key < 12; ++key) {
+            int base = key << 16;
+            switch (r.nextInt(5)) {
+                case 0:
+                    break;
+                case 1:
+                    for (int k = 0; k < 100; ++k) {
+                        rb.add(base + r.nextInt(1 << 16));
+                    }
+                    break;
+                case 2:
+                    for (int k = 0; k < 20000; ++k) {
+                        rb.add(base + r.nextInt(1 << 16));
+                    }
+                    break;
+                case 3:
+                    rb.add((long) base + r.nextInt(1000), (long) base + 30000 + r.nextInt(30000));
+                    break;
+                default:
+                    rb.add((long) base, (long) base + (1 << 16));
+            }
+        }
+        rb.runOptimize();
+        return rb;
+    }
+
+    // no empty container, and array and bitmap containers hold the expected cardinalities
+    private static void assertNormalized(RoaringBitmap rb) {
+        for (int k = 0; k < rb.highLowContainer.size(); ++k) {
+            Container c = rb.highLowContainer.getContainerAtIndex(k);
+            int cardinality = 0;
+            for (ShortIterator it = c.getShortIterator(); it.hasNext(); it.next()) {
+                ++cardinality;
+            }
+            assertEquals(cardinality, c.getCardinality());
+            assertTrue(cardinality > 0);
+            if (c instanceof BitmapContainer) {
+                assertTrue(cardinality > ArrayContainer.DEFAULT_MAX_SIZE);
+            } else if (c instanceof ArrayContainer) {
+                assertTrue(cardinality <= ArrayContainer.DEFAULT_MAX_SIZE);
+            }
+        }
+    }
+
+    @Test
+    public void matchesEagerOperators() {
+        Random r = new Random(12);
+        for (int trial = 0; trial < 100; ++trial) {
+            RoaringBitmap a = randomBitmap(r);
+            Aggregation aggregation = Aggregation.start(a);
+            RoaringBitmap expected = a.clone();
+            RoaringBitmap[] inputs = new RoaringBitmap[6];
+            for (int step = 0; step < inputs.length; ++step) {
+                RoaringBitmap x = randomBitmap(r);
+                inputs[step] = x.clone();
+                switch (r.nextInt(4)) {
+                    case 0:
+                        aggregation.or(x);
+                        expected.or(x);
+                        break;
+                    case 1:
+                        aggregation.and(x);
+                        expected.and(x);
+                        break;
+                    case 2:
+                        aggregation.andNot(x);
+                        expected.andNot(x);
+                        break;
+                    default:
+                        aggregation.xor(x);
+                        expected.xor(x);
+                }
+                // inputs are not modified
+                assertEquals(inputs[step], x);
+            }
+            RoaringBitmap result = aggregation.finish();
+            assertEquals(expected, result);
+            assertEquals(expected.getCardinality(), result.getCardinality());
+            assertNormalized(result);
+        }
+    }
+
+    @Test
+    public void chain() {
+        RoaringBitmap a = RoaringBitmap.bitmapOf(1, 2, 3, 1 << 16);
+        RoaringBitmap b = RoaringBitmap.bitmapOf(4, 5, 2 << 16);
+        RoaringBitmap c = RoaringBitmap.bitmapOf(1, 4, 5, 1 << 16, 2 << 16);
+        RoaringBitmap d = RoaringBitmap.bitmapOf(5, 6, 3 << 16);
+        RoaringBitmap result = Aggregation.start(a).or(b).and(c).xor(d).andNot(a).finish();
+        assertEquals(RoaringBitmap.bitmapOf(4, 6, 2 << 16, 3 << 16), result);
+        assertTrue(Aggregation.start(a).and(d).finish().isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void finishedAggregationsCannotBeReused() {
+        Aggregation aggregation = Aggregation.start(RoaringBitmap.bitmapOf(1));
+        aggregation.finish();
+        aggregation.or(RoaringBitmap.bitmapOf(2));
+    }
+}
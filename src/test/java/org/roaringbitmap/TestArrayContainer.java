@@ -337,4 +337,32 @@ public class TestArrayContainer {
         assertFalse(disjoint.contains(ac));
     }
 
+    @Test
+    public void numberOfRunsLowerBound() {
+        ArrayContainer ac = new ArrayContainer();
+        assertEquals(0, ac.numberOfRunsLowerBound(10));
+        for (int k = 0; k < 100; ++k) {
+            ac.add((short) (k * 2));
+        }
+        assertEquals(100, ac.numberOfRuns());
+        assertEquals(100, ac.numberOfRunsLowerBound(100));
+        // counting stops past the limit
+        assertEquals(11, ac.numberOfRunsLowerBound(10));
+    }
+
+    @Test
+    public void runOptimizeStopsCountingEarly() {
+        ArrayContainer sparse = new ArrayContainer();
+        ArrayContainer runs = new ArrayContainer();
+        for (int k = 0; k < 1000; ++k) {
+            sparse.add((short) (k * 3));
+            runs.add((short) ((k / 4) * 10 + k % 4));
+        }
+        assertThat(sparse.runOptimize(), instanceOf(ArrayContainer.class));
+        // 250 runs take 1002 bytes, against 2000 bytes for the array
+        Container optimized = runs.runOptimize();
+        assertThat(optimized, instanceOf(RunContainer.class));
+        assertEquals(runs, optimized);
+    }
+
 }
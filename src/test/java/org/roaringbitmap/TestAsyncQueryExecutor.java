@@ -0,0 +1,131 @@
+package org.roaringbitmap;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestAsyncQueryExecutor {
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private static RoaringBitmap randomBitmap(Random r) {
+        RoaringBitmap rb = new RoaringBitmap();
+        for (int k = 0; k < 50000; ++k) {
+            rb.add(r.nextInt(1 << 22));
+        }
+        rb.add(-1);
+        rb.add(5000000L, 6000000L);
+        return rb;
+    }
+
+    @Test
+    public void matchesSynchronousAggregation() throws Exception {
+        Random r = new Random(9);
+        RoaringBitmap rb1 = randomBitmap(r);
+        RoaringBitmap rb2 = randomBitmap(r);
+        RoaringBitmap rb3 = randomBitmap(r);
+        for (int containersPerTask : new int[] {1, 3, 1 << 16}) {
+            AsyncQueryExecutor executor = new AsyncQueryExecutor(pool, containersPerTask);
+            assertEquals(FastAggregation.and(rb1, rb2, rb3), executor.and(rb1, rb2, rb3).get());
+            assertEquals(FastAggregation.or(rb1, rb2, rb3), executor.or(rb1, rb2, rb3).get());
+            assertEquals(new RoaringBitmap(), executor.or().get());
+        }
+    }
+
+    @Test
+    public void rangeQueries() throws Exception {
+        Random r = new Random(10);
+        final RoaringBitmap rb1 = randomBitmap(r);
+        final RoaringBitmap rb2 = randomBitmap(r);
+        AsyncQueryExecutor executor = new AsyncQueryExecutor(pool, 2);
+        Future<RoaringBitmap> xor = executor.submit(new AsyncQueryExecutor.RangeQuery() {
+            @Override
+            public RoaringBitmap evaluate(long rangeStart, long rangeEnd) {
+                return RoaringBitmap.xor(Arrays.asList(rb1, rb2).iterator(),
+                        rangeStart, rangeEnd);
+            }
+        }, 100000, 5500000);
+        RoaringBitmap expected = RoaringBitmap.xor(rb1, rb2);
+        expected.and(RoaringBitmap.flip(new RoaringBitmap(), 100000L, 5500000L));
+        assertEquals(expected, xor.get(1, TimeUnit.MINUTES));
+        assertTrue(xor.isDone());
+    }
+
+    @Test
+    public void queriesReturningOutOfRangeValuesFail() throws InterruptedException {
+        final RoaringBitmap everywhere = RoaringBitmap.bitmapOf(1, 1 << 20);
+        AsyncQueryExecutor executor = new AsyncQueryExecutor(pool, 1);
+        Future<RoaringBitmap> result = executor.submit(new AsyncQueryExecutor.RangeQuery() {
+            @Override
+            public RoaringBitmap evaluate(long rangeStart, long rangeEnd) {
+                return everywhere.clone();
+            }
+        }, 0, 1 << 21);
+        try {
+            result.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void cancellationSkipsRemainingSlices() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger evaluated = new AtomicInteger();
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            AsyncQueryExecutor executor = new AsyncQueryExecutor(single, 1);
+            Future<RoaringBitmap> result = executor.submit(new AsyncQueryExecutor.RangeQuery() {
+                @Override
+                public RoaringBitmap evaluate(long rangeStart, long rangeEnd) {
+                    evaluated.incrementAndGet();
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return new RoaringBitmap();
+                }
+            }, 0, 100L << 16);
+            started.await();
+            assertFalse(result.isDone());
+            assertTrue(result.cancel(false));
+            release.countDown();
+            assertTrue(result.isCancelled());
+            try {
+                result.get();
+                fail();
+            } catch (CancellationException e) {
+                // expected
+            }
+            single.shutdown();
+            assertTrue(single.awaitTermination(1, TimeUnit.MINUTES));
+            assertEquals(1, evaluated.get());
+        } finally {
+            single.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.roaringbitmap;
+
+import org.junit.Test;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestBitmapStatistics {
+
+    // key 0: array of one run, key 1: bitmap of a few runs, key 2: run container of many runs
+    private static RoaringBitmap sample() {
+        RoaringBitmap rb = new RoaringBitmap();
+        for (int k = 0; k < 100; ++k) {
+            rb.add(k);
+        }
+        for (int k = 0; k < 4; ++k) {
+            for (int j = 0; j < 5000; ++j) {
+                rb.add((1 << 16) + k * 10000 + j);
+            }
+        }
+        RunContainer rc = new RunContainer();
+        for (int k = 0; k < 3000; ++k) {
+            rc.add((short) (2 * k));
+        }
+        rb.highLowContainer.append((short) 2, rc);
+        return rb;
+    }
+
+    @Test
+    public void containers() {
+        RoaringBitmap rb = sample();
+        BitmapStatistics s = BitmapStatistics.of(rb);
+        assertEquals(1, s.getBitmaps());
+        assertEquals(1, s.getArrayContainers());
+        assertEquals(1, s.getBitmapContainers());
+        assertEquals(1, s.getRunContainers());
+        assertEquals(3, s.getContainers());
+        assertEquals(100, s.getArrayCardinality());
+        assertEquals(20000, s.getBitmapCardinality());
+        assertEquals(3000, s.getRunCardinality());
+        assertEquals(rb.getLongCardinality(), s.getCardinality());
+        assertEquals(1 + 4 + 3000, s.getRuns());
+        assertEquals(rb.getLongSizeInBytes(), s.getHeapBytes());
+        assertEquals(rb.serializedSizeInBytes(), s.getSerializedBytes());
+        assertEquals(rb.highLowContainer.getContainerAtIndex(0).getSizeInBytes(),
+                s.getArrayHeapBytes());
+        assertEquals(rb.highLowContainer.getContainerAtIndex(1).getSizeInBytes(),
+                s.getBitmapHeapBytes());
+        assertEquals(rb.highLowContainer.getContainerAtIndex(2).getSizeInBytes(),
+                s.getRunHeapBytes());
+        assertEquals(200, s.getArraySerializedBytes());
+        assertEquals(8192, s.getBitmapSerializedBytes());
+        assertEquals(2 + 4 * 3000, s.getRunSerializedBytes());
+    }
+
+    @Test
+    public void mappedBitmap() throws IOException {
+        RoaringBitmap rb = sample();
+        File file = File.createTempFile("statistics", ".bin");
+        file.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            rb.serialize(out);
+        }
+        BitmapStatistics expected = BitmapStatistics.of(rb);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer buffer =
+                    raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            ImmutableRoaringBitmap mapped = new ImmutableRoaringBitmap(buffer);
+            BitmapStatistics s = BitmapStatistics.of(mapped);
+            assertEquals(1, s.getBitmaps());
+            assertEquals(expected.getArrayContainers(), s.getArrayContainers());
+            assertEquals(expected.getBitmapContainers(), s.getBitmapContainers());
+            assertEquals(expected.getRunContainers(), s.getRunContainers());
+            assertEquals(expected.getArrayCardinality(), s.getArrayCardinality());
+            assertEquals(expected.getBitmapCardinality(), s.getBitmapCardinality());
+            assertEquals(expected.getRunCardinality(), s.getRunCardinality());
+            assertEquals(expected.getRuns(), s.getRuns());
+            assertEquals(expected.getArraySerializedBytes(), s.getArraySerializedBytes());
+            assertEquals(expected.getBitmapSerializedBytes(), s.getBitmapSerializedBytes());
+            assertEquals(expected.getRunSerializedBytes(), s.getRunSerializedBytes());
+            assertEquals(expected.getSerializedBytes(), s.getSerializedBytes());
+            assertEquals(expected.getRunOptimizeSavings(), s.getRunOptimizeSavings());
+            assertEquals(mapped.getLongSizeInBytes(), s.getHeapBytes());
+            // statistics of heap and mapped bitmaps aggregate together
+            s.merge(expected);
+            s.add(rb.toMutableRoaringBitmap());
+            assertEquals(3, s.getBitmaps());
+            assertEquals(3 * rb.getLongCardinality(), s.getCardinality());
+            assertEquals(3 * expected.getRunOptimizeSavings(), s.getRunOptimizeSavings());
+        }
+    }
+
+    @Test
+    public void runOptimizeSavings() {
+        RoaringBitmap rb = sample();
+        // 200 - 6 for the array, 8192 - 18 for the bitmap, 12002 - 6002 for the run container
+        assertEquals(194 + 8174 + 6000, BitmapStatistics.of(rb).getRunOptimizeSavings());
+        rb.runOptimize();
+        BitmapStatistics optimized = BitmapStatistics.of(rb);
+        assertEquals(0, optimized.getRunOptimizeSavings());
+        assertEquals(2, optimized.getRunContainers());
+        assertEquals(1, optimized.getArrayContainers());
+    }
+
+    @Test
+    public void aggregate() {
+        RoaringBitmap x1 = sample();
+        RoaringBitmap x2 = RoaringBitmap.bitmapOf(1, 2, 3, 1 << 20);
+        BitmapStatistics total = new BitmapStatistics();
+        total.add(x1);
+        total.add(x2);
+        BitmapStatistics merged = BitmapStatistics.of(x1);
+        merged.merge(BitmapStatistics.of(x2));
+        merged.merge(new BitmapStatistics());
+        assertEquals(total.toString(), merged.toString());
+        assertEquals(2, total.getBitmaps());
+        assertEquals(3, total.getArrayContainers());
+        assertEquals(x1.getLongCardinality() + 4, total.getCardinality());
+        assertEquals(x1.serializedSizeInBytes() + x2.serializedSizeInBytes(),
+                total.getSerializedBytes());
+    }
+}
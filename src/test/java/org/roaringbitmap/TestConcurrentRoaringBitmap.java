@@ -0,0 +1,106 @@
+package org.roaringbitmap;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestConcurrentRoaringBitmap {
+
+    @Test
+    public void updatesMatchRoaringBitmap() {
+        Random r = new Random(2);
+        ConcurrentRoaringBitmap concurrent = new ConcurrentRoaringBitmap();
+        RoaringBitmap expected = new RoaringBitmap();
+        for (int k = 0; k < 100000; ++k) {
+            int x = r.nextBoolean() ? r.nextInt(1 << 20) : r.nextInt();
+            if (k % 4 == 3) {
+                concurrent.remove(x);
+                expected.remove(x);
+            } else {
+                concurrent.add(x);
+                expected.add(x);
+            }
+        }
+        concurrent.add(-1, 0, 1 << 16);
+        expected.add(-1);
+        expected.add(0);
+        expected.add(1 << 16);
+        assertEquals(expected, concurrent.toRoaringBitmap());
+        assertEquals(expected.getLongCardinality(), concurrent.getLongCardinality());
+        assertTrue(concurrent.contains(-1));
+        concurrent.remove(-1);
+        assertFalse(concurrent.contains(-1));
+        assertEquals(expected.contains(-2), concurrent.contains(-2));
+    }
+
+    @Test
+    public void snapshotIsACopy() {
+        ConcurrentRoaringBitmap concurrent = new ConcurrentRoaringBitmap();
+        concurrent.add(1, 2, 3);
+        RoaringBitmap snapshot = concurrent.toRoaringBitmap();
+        concurrent.remove(1);
+        concurrent.add(4);
+        assertEquals(RoaringBitmap.bitmapOf(1, 2, 3), snapshot);
+        assertEquals(RoaringBitmap.bitmapOf(2, 3, 4), concurrent.toRoaringBitmap());
+        concurrent.remove(2);
+        concurrent.remove(3);
+        concurrent.remove(4);
+        assertEquals(0, concurrent.getLongCardinality());
+        assertTrue(concurrent.toRoaringBitmap().isEmpty());
+    }
+
+    @Test
+    public void concurrentWritersAndSnapshots() throws InterruptedException {
+        final ConcurrentRoaringBitmap concurrent = new ConcurrentRoaringBitmap();
+        final int threads = 8;
+        final int perThread = 50000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            final int id = t;
+            writers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        // interleaved values, every thread touches every container
+                        for (int k = 0; k < perThread; ++k) {
+                            concurrent.add(k * threads + id);
+                        }
+                        for (int k = 0; k < perThread; k += 2) {
+                            concurrent.remove(k * threads + id);
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            writers[t].start();
+        }
+        start.countDown();
+        // snapshots taken during ingestion are consistent bitmaps
+        for (int k = 0; k < 20; ++k) {
+            RoaringBitmap snapshot = concurrent.toRoaringBitmap();
+            assertEquals(snapshot.getCardinality(), snapshot.toArray().length);
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertNull(failure.get());
+        RoaringBitmap expected = new RoaringBitmap();
+        for (int k = 1; k < perThread; k += 2) {
+            for (int t = 0; t < threads; ++t) {
+                expected.add(k * threads + t);
+            }
+        }
+        assertEquals(expected, concurrent.toRoaringBitmap());
+    }
+}
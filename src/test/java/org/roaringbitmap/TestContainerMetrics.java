@@ -0,0 +1,78 @@
+package org.roaringbitmap;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.roaringbitmap.ContainerMetrics.Operation.AND;
+import static org.roaringbitmap.ContainerMetrics.Operation.ANDNOT;
+import static org.roaringbitmap.ContainerMetrics.Operation.OR;
+import static org.roaringbitmap.ContainerMetrics.Operation.XOR;
+import static org.roaringbitmap.ContainerMetrics.Type.ARRAY;
+import static org.roaringbitmap.ContainerMetrics.Type.BITMAP;
+import static org.roaringbitmap.ContainerMetrics.Type.RUN;
+
+public class TestContainerMetrics {
+
+    @After
+    public void reset() {
+        ContainerMetrics.reset();
+    }
+
+    @Test
+    public void record() {
+        ContainerMetrics.reset();
+        Container array = new ArrayContainer();
+        Container bitmap = new BitmapContainer();
+        Container run = new RunContainer();
+        long start = System.nanoTime();
+        ContainerMetrics.record(AND, array, bitmap, start);
+        ContainerMetrics.record(AND, array, bitmap, start);
+        ContainerMetrics.record(XOR, run, array, start);
+        ContainerMetrics.Snapshot snapshot = ContainerMetrics.snapshot();
+        assertEquals(2, snapshot.getCount(AND, ARRAY, BITMAP));
+        assertEquals(0, snapshot.getCount(AND, BITMAP, ARRAY));
+        assertEquals(1, snapshot.getCount(XOR, RUN, ARRAY));
+        assertEquals(3, snapshot.getTotalCount());
+        assertTrue(snapshot.getNanos(AND, ARRAY, BITMAP) >= 0);
+        assertTrue(snapshot.toString().startsWith("AND ARRAY BITMAP count=2 nanos="));
+        assertEquals(2, snapshot.toString().split("\n").length);
+        ContainerMetrics.reset();
+        assertEquals(0, ContainerMetrics.snapshot().getTotalCount());
+        // a snapshot is a copy
+        assertEquals(3, snapshot.getTotalCount());
+    }
+
+    // the pom runs this class a second time with -Dorg.roaringbitmap.metrics=true
+    @Test
+    public void dispatchCountsOnlyWhenEnabled() {
+        ContainerMetrics.reset();
+        RoaringBitmap array = RoaringBitmap.bitmapOf(1, 2, 3);
+        RoaringBitmap array2 = RoaringBitmap.bitmapOf(2, 3, 4);
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int k = 0; k < 10000; k += 2) {
+            bitmap.add(k);
+        }
+        RoaringBitmap run = new RoaringBitmap();
+        run.add(0L, 100L);
+        assertEquals(BitmapContainer.class,
+                bitmap.highLowContainer.getContainerAtIndex(0).getClass());
+        assertEquals(RunContainer.class, run.highLowContainer.getContainerAtIndex(0).getClass());
+        RoaringBitmap.and(array, array2);
+        RoaringBitmap.and(array, bitmap);
+        RoaringBitmap.andNot(bitmap, array);
+        RoaringBitmap.or(run, array);
+        RoaringBitmap.xor(bitmap, run);
+        long expected = ContainerMetrics.isEnabled() ? 1 : 0;
+        ContainerMetrics.Snapshot snapshot = ContainerMetrics.snapshot();
+        assertEquals(expected, snapshot.getCount(AND, ARRAY, ARRAY));
+        assertEquals(expected, snapshot.getCount(AND, ARRAY, BITMAP));
+        assertEquals(0, snapshot.getCount(AND, BITMAP, ARRAY));
+        assertEquals(expected, snapshot.getCount(ANDNOT, BITMAP, ARRAY));
+        assertEquals(expected, snapshot.getCount(OR, RUN, ARRAY));
+        assertEquals(expected, snapshot.getCount(XOR, BITMAP, RUN));
+        assertEquals(5 * expected, snapshot.getTotalCount());
+        assertTrue(snapshot.getNanos(AND, ARRAY, BITMAP) >= 0);
+    }
+}
@@ -0,0 +1,115 @@
+package org.roaringbitmap;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestContainerTypePolicy {
+
+    // key 0: runs of runLength values every 2 * runLength, key 1: a few long runs, key 2: sparse
+    private static RoaringBitmap sample(int runLength) {
+        RoaringBitmapWriter writer = new RoaringBitmapWriter();
+        for (int k = 0; k < 1 << 16; k += 2 * runLength) {
+            for (int j = 0; j < runLength && k + j < 1 << 16; ++j) {
+                writer.add(k + j);
+            }
+        }
+        for (int k = 0; k < 20; ++k) {
+            for (int j = 0; j < 100; ++j) {
+                writer.add((1 << 16) + k * 3000 + j);
+            }
+        }
+        for (int k = 0; k < 1000; ++k) {
+            writer.add((2 << 16) + k * 7);
+        }
+        // built without run containers
+        RoaringBitmap rb = writer.get();
+        for (int k = 0; k < rb.highLowContainer.size(); ++k) {
+            Container c = rb.highLowContainer.getContainerAtIndex(k);
+            if (c instanceof RunContainer) {
+                rb.highLowContainer.setContainerAtIndex(k,
+                        ((RunContainer) c).toBitmapOrArrayContainer(c.getCardinality()));
+            }
+        }
+        return rb;
+    }
+
+    private static Class<?> typeAt(RoaringBitmap rb, int index) {
+        return rb.highLowContainer.getContainerAtIndex(index).getClass();
+    }
+
+    private static RoaringBitmap roundTrip(RoaringBitmap rb) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        rb.serialize(new DataOutputStream(bos));
+        RoaringBitmap answer = new RoaringBitmap();
+        answer.deserialize(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+        return answer;
+    }
+
+    @Test
+    public void withoutRecordsBehavesLikeRunOptimize() {
+        RoaringBitmap rb = sample(20);
+        RoaringBitmap expected = sample(20);
+        expected.runOptimize();
+        assertTrue(new ContainerTypePolicy().apply(rb));
+        for (int k = 0; k < 3; ++k) {
+            assertEquals(typeAt(expected, k), typeAt(rb, k));
+        }
+    }
+
+    @Test
+    public void lookupsPreferBitmapsAndArrays() throws IOException {
+        RoaringBitmap rb = sample(20);
+        rb.runOptimize();
+        assertEquals(RunContainer.class, typeAt(rb, 0));
+        ContainerTypePolicy policy = new ContainerTypePolicy();
+        policy.recordPointQueries(1000);
+        policy.recordRangeOperations(10);
+        assertTrue(policy.apply(rb));
+        assertEquals(sample(20), rb);
+        assertEquals(BitmapContainer.class, typeAt(rb, 0));
+        assertEquals(ArrayContainer.class, typeAt(rb, 1));
+        assertEquals(ArrayContainer.class, typeAt(rb, 2));
+        assertEquals(rb, roundTrip(rb));
+        assertFalse(policy.apply(rb));
+    }
+
+    @Test
+    public void fewRunsStayRuns() {
+        RoaringBitmap rb = RoaringBitmap.bitmapOf();
+        rb.add(0L, 50000L);
+        rb.runOptimize();
+        ContainerTypePolicy policy = new ContainerTypePolicy();
+        policy.recordBitmapOperations(1);
+        assertFalse(policy.apply(rb));
+        assertEquals(RunContainer.class, typeAt(rb, 0));
+    }
+
+    @Test
+    public void rangeOperationsPreferRuns() throws IOException {
+        RoaringBitmap rb = sample(10);
+        assertEquals(BitmapContainer.class, typeAt(rb, 0));
+        ContainerTypePolicy policy = new ContainerTypePolicy();
+        policy.recordRangeOperations(100);
+        policy.recordPointQueries(10);
+        assertTrue(policy.apply(rb));
+        assertEquals(sample(10), rb);
+        // runs of 10 values are kept as runs, even though the bitmap is smaller
+        assertEquals(RunContainer.class, typeAt(rb, 0));
+        assertEquals(RunContainer.class, typeAt(rb, 1));
+        assertEquals(ArrayContainer.class, typeAt(rb, 2));
+        assertEquals(rb, roundTrip(rb));
+        policy.reset();
+        policy.recordPointQueries(1);
+        policy.apply(rb);
+        assertEquals(BitmapContainer.class, typeAt(rb, 0));
+    }
+}
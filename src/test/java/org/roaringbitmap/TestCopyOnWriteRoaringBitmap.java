@@ -0,0 +1,105 @@
+package org.roaringbitmap;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestCopyOnWriteRoaringBitmap {
+
+    @Test
+    public void updatesMatchRoaringBitmap() {
+        Random r = new Random(1);
+        CopyOnWriteRoaringBitmap cow = new CopyOnWriteRoaringBitmap();
+        RoaringBitmap expected = new RoaringBitmap();
+        for (int round = 0; round < 200; ++round) {
+            int[] batch = new int[1 + r.nextInt(100)];
+            for (int k = 0; k < batch.length; ++k) {
+                batch[k] = r.nextBoolean() ? r.nextInt(1 << 18) : r.nextInt();
+            }
+            if (round % 3 == 2) {
+                cow.remove(batch);
+                for (int x : batch) {
+                    expected.remove(x);
+                }
+                cow.remove(batch[0]);
+            } else {
+                cow.add(batch);
+                expected.add(batch);
+                cow.add(batch[0]);
+            }
+            assertEquals(expected, cow.snapshot());
+        }
+        assertEquals(expected.getLongCardinality(), cow.getLongCardinality());
+        assertTrue(cow.contains(expected.select(0)));
+    }
+
+    @Test
+    public void snapshotsAreNotModified() {
+        CopyOnWriteRoaringBitmap cow = new CopyOnWriteRoaringBitmap(RoaringBitmap.bitmapOf(1, 2, 3));
+        RoaringBitmap before = cow.snapshot();
+        RoaringBitmap copy = before.clone();
+        cow.add(4, 1 << 20);
+        cow.remove(1);
+        cow.remove(2, 3);
+        assertEquals(copy, before);
+        assertEquals(RoaringBitmap.bitmapOf(4, 1 << 20), cow.snapshot());
+        // no-op updates do not publish a new snapshot
+        RoaringBitmap current = cow.snapshot();
+        cow.add(4);
+        cow.remove(5);
+        cow.add(4, 1 << 20);
+        assertSame(current, cow.snapshot());
+        cow.remove(4, 1 << 20);
+        assertTrue(cow.isEmpty());
+        assertFalse(cow.contains(4));
+    }
+
+    @Test
+    public void readersSeeConsistentSnapshots() throws InterruptedException {
+        final CopyOnWriteRoaringBitmap cow = new CopyOnWriteRoaringBitmap();
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; ++t) {
+            readers[t] = new Thread() {
+                @Override
+                public void run() {
+                    while (!done.get()) {
+                        // the writer always adds pairs (k, k + 100000)
+                        RoaringBitmap snapshot = cow.snapshot();
+                        IntIterator it = snapshot.getIntIterator();
+                        int n = 0;
+                        while (it.hasNext()) {
+                            int x = it.next();
+                            if (x < 100000 && !snapshot.contains(x + 100000)) {
+                                failure.set("missing pair of " + x);
+                            }
+                            ++n;
+                        }
+                        if (n % 2 != 0) {
+                            failure.set("odd cardinality " + n);
+                        }
+                    }
+                }
+            };
+            readers[t].start();
+        }
+        for (int k = 0; k < 5000; ++k) {
+            cow.add(k * 7, k * 7 + 100000);
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get());
+        assertEquals(10000, cow.getLongCardinality());
+    }
+}
@@ -2,7 +2,12 @@ package org.roaringbitmap;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -196,4 +201,101 @@ public class TestFastAggregation {
         assertTrue(ebResult.contains(3));
     }
 
+    @Test
+    public void parallel_or() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Random r = new Random(11);
+            RoaringBitmap[] bitmaps = new RoaringBitmap[1000];
+            for (int k = 0; k < bitmaps.length; ++k) {
+                bitmaps[k] = new RoaringBitmap();
+                // sparse, dense and run containers
+                for (int j = 0; j < 100; ++j) {
+                    bitmaps[k].add(r.nextInt(1 << 20));
+                }
+                if (k % 10 == 0) {
+                    for (int j = 0; j < 5000; ++j) {
+                        bitmaps[k].add((3 << 16) + r.nextInt(1 << 16));
+                    }
+                }
+                if (k % 100 == 0) {
+                    bitmaps[k].add((long) k << 16, (long) (k + 2) << 16);
+                    bitmaps[k].runOptimize();
+                }
+            }
+            RoaringBitmap expected = FastAggregation.naive_or(bitmaps);
+            for (int tasks : new int[] {1, 3, 4, 2000}) {
+                assertEquals(expected, FastAggregation.parallel_or(executor, tasks, bitmaps));
+                assertEquals(expected.getCardinality(),
+                        FastAggregation.parallel_or(executor, tasks, Arrays.asList(bitmaps)).getCardinality());
+            }
+            assertTrue(FastAggregation.parallel_or(executor, 4).isEmpty());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // values in at least threshold bitmaps, as the union of the intersections of all combinations
+    private static RoaringBitmap thresholdByCombinations(int threshold, RoaringBitmap[] bitmaps) {
+        RoaringBitmap answer = new RoaringBitmap();
+        for (int mask = 0; mask < 1 << bitmaps.length; ++mask) {
+            if (Integer.bitCount(mask) == threshold) {
+                List<RoaringBitmap> combination = new ArrayList<>();
+                for (int k = 0; k < bitmaps.length; ++k) {
+                    if ((mask & (1 << k)) != 0) {
+                        combination.add(bitmaps[k]);
+                    }
+                }
+                answer.or(FastAggregation.naive_and(combination.iterator()));
+            }
+        }
+        return answer;
+    }
+
+    private static RoaringBitmap[] mixedBitmaps(Random r, int count) {
+        RoaringBitmap[] bitmaps = new RoaringBitmap[count];
+        for (int k = 0; k < count; ++k) {
+            bitmaps[k] = new RoaringBitmap();
+            // sparse in key 0, dense in key 1, runs in key 2, dense or sparse in key 3
+            for (int j = 0; j < 2000; ++j) {
+                bitmaps[k].add(r.nextInt(1 << 14));
+            }
+            for (int j = 0; j < 30000; ++j) {
+                bitmaps[k].add((1 << 16) + r.nextInt(1 << 16));
+            }
+            bitmaps[k].add((2L << 16) + 100 * k, (3L << 16) - 5000 * k);
+            for (int j = 0; j < (k % 2 == 0 ? 40000 : 100); ++j) {
+                bitmaps[k].add((3 << 16) + r.nextInt(1 << 16));
+            }
+            bitmaps[k].add((5 + k) << 16);
+            bitmaps[k].runOptimize();
+        }
+        return bitmaps;
+    }
+
+    @Test
+    public void fusedAggregations() {
+        Random r = new Random(4321);
+        RoaringBitmap[] bitmaps = mixedBitmaps(r, 6);
+        assertEquals(FastAggregation.naive_and(bitmaps), FastAggregation.fused_and(bitmaps));
+        assertEquals(FastAggregation.naive_or(bitmaps), FastAggregation.fused_or(bitmaps));
+        for (int threshold = 1; threshold <= bitmaps.length; ++threshold) {
+            RoaringBitmap expected = thresholdByCombinations(threshold, bitmaps);
+            RoaringBitmap actual = FastAggregation.threshold(threshold, bitmaps);
+            assertEquals(expected, actual);
+            assertEquals(expected.getCardinality(), actual.getCardinality());
+            assertEquals(RoaringBitmap.and(Arrays.asList(expected).iterator(), 70000L, 200000L),
+                    FastAggregation.threshold(threshold, 70000L, 200000L, bitmaps));
+        }
+        assertTrue(FastAggregation.threshold(7, bitmaps).isEmpty());
+        assertTrue(FastAggregation.fused_and().isEmpty());
+        assertTrue(FastAggregation.fused_or().isEmpty());
+        assertEquals(bitmaps[0], FastAggregation.fused_and(bitmaps[0]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void thresholdMustBePositive() {
+        FastAggregation.threshold(0, new RoaringBitmap());
+    }
+
 }
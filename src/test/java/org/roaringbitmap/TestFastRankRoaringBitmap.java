@@ -0,0 +1,102 @@
+package org.roaringbitmap;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestFastRankRoaringBitmap {
+
+    private static FastRankRoaringBitmap randomBitmap(Random r) {
+        FastRankRoaringBitmap rb = new FastRankRoaringBitmap();
+        // sparse, dense and run containers, including keys with the sign bit set
+        for (int k = 0; k < 20000; ++k) {
+            rb.add(r.nextInt());
+        }
+        for (int k = 0; k < 50000; ++k) {
+            rb.add((3 << 16) + r.nextInt(1 << 16));
+        }
+        rb.add(10L << 16, 12L << 16);
+        rb.runOptimize();
+        return rb;
+    }
+
+    private static void assertSameRankAndSelect(Random r, FastRankRoaringBitmap fast) {
+        RoaringBitmap reference = new RoaringBitmap();
+        reference.or(fast);
+        assertEquals(reference.getLongCardinality(), fast.getLongCardinality());
+        for (int k = 0; k < 2000; ++k) {
+            int x = r.nextInt();
+            assertEquals(reference.rankLong(x), fast.rankLong(x));
+            int j = r.nextInt(reference.getCardinality());
+            assertEquals(reference.select(j), fast.select(j));
+        }
+        int[] values = reference.toArray();
+        for (int k = 0; k < values.length; k += 97) {
+            assertEquals(values[k], fast.select(k));
+            assertEquals(reference.rankLong(values[k]), fast.rankLong(values[k]));
+            assertEquals(reference.rankLong(values[k] - 1), fast.rankLong(values[k] - 1));
+        }
+        assertEquals(values[values.length - 1], fast.select(values.length - 1));
+    }
+
+    @Test
+    public void rankAndSelect() {
+        Random r = new Random(1);
+        assertSameRankAndSelect(r, randomBitmap(r));
+    }
+
+    @Test
+    public void cacheIsResetByMutations() {
+        Random r = new Random(2);
+        FastRankRoaringBitmap rb = randomBitmap(r);
+        assertSameRankAndSelect(r, rb);
+        rb.add(5);
+        rb.remove(10 << 16);
+        assertSameRankAndSelect(r, rb);
+        rb.flip(0L, 1L << 20);
+        assertSameRankAndSelect(r, rb);
+        rb.or(RoaringBitmap.bitmapOf(7, 1 << 30));
+        assertSameRankAndSelect(r, rb);
+        rb.andNot(RoaringBitmap.bitmapOf(7));
+        assertSameRankAndSelect(r, rb);
+        rb.removeRunCompression();
+        assertSameRankAndSelect(r, rb);
+        rb.remove(0L, 1L << 16);
+        rb.add(1, 2, 3);
+        assertSameRankAndSelect(r, rb);
+        Iterator<Integer> it = rb.iterator();
+        it.next();
+        it.remove();
+        assertSameRankAndSelect(r, rb);
+    }
+
+    @Test
+    public void cloneIsIndependent() {
+        Random r = new Random(3);
+        FastRankRoaringBitmap rb = randomBitmap(r);
+        assertSameRankAndSelect(r, rb);
+        FastRankRoaringBitmap copy = rb.clone();
+        copy.add(1L << 31, (1L << 31) + 100000);
+        assertSameRankAndSelect(r, copy);
+        assertSameRankAndSelect(r, rb);
+    }
+
+    @Test
+    public void empty() {
+        FastRankRoaringBitmap rb = new FastRankRoaringBitmap();
+        assertEquals(0, rb.getLongCardinality());
+        assertEquals(0, rb.rankLong(12));
+        assertTrue(rb.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void selectBeyondCardinality() {
+        FastRankRoaringBitmap rb = new FastRankRoaringBitmap();
+        rb.add(1, 2, 3);
+        rb.select(3);
+    }
+}
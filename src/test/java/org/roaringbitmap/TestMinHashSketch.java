@@ -0,0 +1,86 @@
+package org.roaringbitmap;
+
+import org.junit.Test;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestMinHashSketch {
+
+    private static RoaringBitmap random(Random r, int count, int universe) {
+        RoaringBitmap rb = new RoaringBitmap();
+        while (rb.getCardinality() < count) {
+            rb.add(r.nextInt(universe));
+        }
+        return rb;
+    }
+
+    @Test
+    public void exactBelowK() {
+        RoaringBitmap x1 = RoaringBitmap.bitmapOf(1, 2, 3, 4, -1);
+        RoaringBitmap x2 = RoaringBitmap.bitmapOf(3, 4, 5, -1);
+        MinHashSketch s1 = MinHashSketch.of(x1, 16);
+        MinHashSketch s2 = MinHashSketch.of(x2);
+        s1.add(2);
+        assertEquals(5, s1.cardinality(), 0);
+        assertEquals(6, MinHashSketch.unionCardinality(s1, s2), 0);
+        assertEquals(3, MinHashSketch.intersectionCardinality(s1, s2), 1e-9);
+        assertEquals(0.5, MinHashSketch.jaccard(s1, s2), 1e-9);
+        MinHashSketch empty = new MinHashSketch(16);
+        assertEquals(0, empty.cardinality(), 0);
+        assertEquals(1, MinHashSketch.jaccard(empty, new MinHashSketch()), 0);
+        assertEquals(0, MinHashSketch.jaccard(empty, s1), 0);
+        assertEquals(0, MinHashSketch.intersectionCardinality(empty, empty), 0);
+    }
+
+    @Test
+    public void estimates() {
+        Random r = new Random(1);
+        RoaringBitmap x1 = random(r, 100000, 1 << 20);
+        RoaringBitmap x2 = random(r, 50000, 1 << 20);
+        x2.add(0L, 30000L);
+        x1.add(0L, 30000L);
+        Similarity exact = Similarity.compute(x1, x2);
+        MinHashSketch s1 = MinHashSketch.of(x1, 1024);
+        MinHashSketch s2 = MinHashSketch.of(x2.toMutableRoaringBitmap(), 1024);
+        // about three times the standard error of 1 / sqrt(1024)
+        double tolerance = 0.1;
+        assertEquals(1, s1.cardinality() / x1.getLongCardinality(), tolerance);
+        assertEquals(1, s2.cardinality() / x2.getLongCardinality(), tolerance);
+        assertEquals(1, MinHashSketch.unionCardinality(s1, s2) / exact.getUnionCardinality(),
+                tolerance);
+        assertEquals(exact.jaccard(), MinHashSketch.jaccard(s1, s2), tolerance * exact.jaccard());
+        assertEquals(1, MinHashSketch.intersectionCardinality(s1, s2)
+                / exact.getIntersectionCardinality(), 2 * tolerance);
+        // the smallest k decides
+        assertEquals(MinHashSketch.jaccard(MinHashSketch.of(x1, 256), s2),
+                MinHashSketch.jaccard(MinHashSketch.of(x1, 256), MinHashSketch.of(x2, 256)), 0);
+    }
+
+    @Test
+    public void merge() {
+        Random r = new Random(2);
+        RoaringBitmap x1 = random(r, 20000, 1 << 18);
+        RoaringBitmap x2 = random(r, 20000, 1 << 18);
+        MinHashSketch merged = MinHashSketch.of(x1);
+        merged.merge(MinHashSketch.of(x2));
+        MinHashSketch union = MinHashSketch.of(RoaringBitmap.or(x1, x2));
+        assertEquals(union.cardinality(), merged.cardinality(), 0);
+        assertEquals(1, MinHashSketch.jaccard(union, merged), 0);
+        MinHashSketch maintained = new MinHashSketch();
+        MutableRoaringBitmap mutable = new MutableRoaringBitmap();
+        for (int k = 0; k < 10; ++k) {
+            int value = r.nextInt();
+            maintained.add(value);
+            mutable.add(value);
+        }
+        assertEquals(1, MinHashSketch.jaccard(maintained, MinHashSketch.of(mutable)), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeNeedsEnoughHashes() {
+        new MinHashSketch(256).merge(new MinHashSketch(128));
+    }
+}
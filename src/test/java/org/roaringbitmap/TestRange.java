@@ -966,7 +966,54 @@ public class TestRange {
       assertEquals(0, resultInt.getCardinality());
   }
 
-
-
-
+  private static RoaringBitmap randomRangeBitmap(Random r) {
+      RoaringBitmap rb = new RoaringBitmap();
+      for (int k = 0; k < 2000; ++k) {
+          rb.add(r.nextInt(20 << 16));
+      }
+      rb.add((long) r.nextInt(10 << 16), (long) (10 << 16) + r.nextInt(10 << 16));
+      if (r.nextBoolean()) {
+          rb.runOptimize();
+      }
+      return rb;
+  }
+
+  @Test
+  public void testRangedAggregationsMatchClippedInputs() {
+      Random r = new Random(42);
+      for (int trial = 0; trial < 50; ++trial) {
+          List<RoaringBitmap> list = new ArrayList<>();
+          for (int k = 0; k < 1 + r.nextInt(4); ++k) {
+              list.add(randomRangeBitmap(r));
+          }
+          long rangeStart = r.nextInt(21 << 16);
+          long rangeEnd = rangeStart + r.nextInt(trial % 2 == 0 ? 1 << 16 : 12 << 16);
+          if (trial == 0) {
+              rangeStart = 3 << 16;
+              rangeEnd = 9 << 16;
+          }
+          RoaringBitmap range = new RoaringBitmap();
+          range.add(rangeStart, rangeEnd);
+          List<RoaringBitmap> clipped = new ArrayList<>();
+          for (RoaringBitmap rb : list) {
+              clipped.add(RoaringBitmap.and(rb, range));
+          }
+          RoaringBitmap[] inputs = clipped.toArray(new RoaringBitmap[0]);
+          assertEquals(FastAggregation.naive_and(inputs),
+              RoaringBitmap.and(list.iterator(), rangeStart, rangeEnd));
+          assertEquals(FastAggregation.naive_or(inputs),
+              RoaringBitmap.or(list.iterator(), rangeStart, rangeEnd));
+          assertEquals(FastAggregation.naive_xor(inputs),
+              RoaringBitmap.xor(list.iterator(), rangeStart, rangeEnd));
+          assertEquals(RoaringBitmap.andNot(inputs[0], RoaringBitmap.and(list.get(1 % inputs.length),
+              range)), RoaringBitmap.andNot(list.get(0), list.get(1 % inputs.length), rangeStart,
+              rangeEnd));
+      }
+      // inputs are not modified
+      RoaringBitmap rb = RoaringBitmap.bitmapOf(1, 2, 1 << 16, 3 << 16);
+      RoaringBitmap copy = rb.clone();
+      RoaringBitmap.or(java.util.Arrays.asList(rb, rb).iterator(), 2L, (3L << 16) + 1).add(7);
+      RoaringBitmap.xor(java.util.Arrays.asList(rb).iterator(), 0L, 1L << 20).add(7);
+      assertEquals(copy, rb);
+  }
 }
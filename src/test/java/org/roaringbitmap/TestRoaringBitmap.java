@@ -4342,4 +4342,103 @@ public class TestRoaringBitmap {
     Assert.assertEquals(rb2, rb1);
   }
 
+
+  @Test
+  public void testAddMany() {
+    Random r = new Random(42);
+    int[] values = new int[200000];
+    for (int k = 0; k < values.length; ++k) {
+      switch (k % 3) {
+        case 0: // sparse, spread over the whole unsigned range
+          values[k] = r.nextInt();
+          break;
+        case 1: // dense chunk
+          values[k] = (5 << 16) + r.nextInt(1 << 16);
+          break;
+        default: // duplicates
+          values[k] = r.nextInt(100);
+      }
+    }
+    int[] copy = values.clone();
+    RoaringBitmap expected = new RoaringBitmap();
+    for (int v : values) {
+      expected.add(v);
+    }
+    RoaringBitmap rb = new RoaringBitmap();
+    rb.addMany(values);
+    Assert.assertArrayEquals(copy, values);
+    Assert.assertEquals(expected, rb);
+    Assert.assertEquals(expected.getCardinality(), rb.getCardinality());
+  }
+
+  @Test
+  public void testAddManyMergesExisting() {
+    RoaringBitmap rb = RoaringBitmap.bitmapOf(3, 1 << 16, 7 << 16, -1);
+    RoaringBitmap expected = rb.clone();
+    int[] values = new int[5000];
+    for (int k = 0; k < values.length; ++k) {
+      values[k] = (values.length - k) * 97;
+      expected.add(values[k]);
+    }
+    rb.addMany(values);
+    Assert.assertEquals(expected, rb);
+    rb.addMany(new int[] {2, 1});
+    expected.add(new int[] {1, 2});
+    Assert.assertEquals(expected, rb);
+  }
+
+  @Test
+  public void testAddManyFullContainer() {
+    int[] values = new int[1 << 16];
+    for (int k = 0; k < values.length; ++k) {
+      values[k] = (2 << 16) + values.length - 1 - k;
+    }
+    RoaringBitmap rb = new RoaringBitmap();
+    rb.addMany(values);
+    Assert.assertEquals(1 << 16, rb.getCardinality());
+    Assert.assertTrue(rb.getContainerPointer().isRunContainer());
+  }
+
+
+  @Test
+  public void testRankWithMissingKey() {
+    RoaringBitmap rb = RoaringBitmap.bitmapOf(1, 2 << 16, (2 << 16) + 5);
+    Assert.assertEquals(1, rb.rankLong(5));
+    Assert.assertEquals(1, rb.rankLong((1 << 16) + 7));
+    Assert.assertEquals(3, rb.rankLong((2 << 16) + 5));
+  }
+
+  @Test
+  public void andCardinalityAtLeast() {
+    Random r = new Random(2345);
+    for (int trial = 0; trial < 20; ++trial) {
+      RoaringBitmap rb1 = new RoaringBitmap();
+      RoaringBitmap rb2 = new RoaringBitmap();
+      // array, bitmap and run containers
+      for (int k = 0; k < 6; ++k) {
+        int n = r.nextInt(3) == 0 ? 100 : 20000;
+        for (int j = 0; j < n; ++j) {
+          rb1.add((k << 16) + r.nextInt(1 << 16));
+          rb2.add((k << 16) + r.nextInt(1 << 16));
+        }
+      }
+      rb1.add(6L << 16, (6L << 16) + r.nextInt(60000));
+      rb2.add(6L << 16, (6L << 16) + r.nextInt(60000));
+      if (trial % 2 == 0) {
+        rb1.runOptimize();
+      }
+      long card = RoaringBitmap.andCardinality(rb1, rb2);
+      for (long limit : new long[] {-1, 0, 1, 2, card / 2, card - 1, card}) {
+        Assert.assertTrue(RoaringBitmap.andCardinalityAtLeast(rb1, rb2, limit));
+        Assert.assertTrue(RoaringBitmap.andCardinalityAtLeast(rb2, rb1, limit));
+      }
+      for (long limit : new long[] {card + 1, card + 100000, Long.MAX_VALUE}) {
+        Assert.assertFalse(RoaringBitmap.andCardinalityAtLeast(rb1, rb2, limit));
+        Assert.assertFalse(RoaringBitmap.andCardinalityAtLeast(rb2, rb1, limit));
+      }
+    }
+    Assert.assertFalse(RoaringBitmap.andCardinalityAtLeast(RoaringBitmap.bitmapOf(1, 2),
+        RoaringBitmap.bitmapOf(3), 1));
+  }
+
 }
@@ -0,0 +1,124 @@
+package org.roaringbitmap;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestRoaringBitmapWriter {
+
+    private static void assertSameContainers(RoaringBitmap expected, RoaringBitmap actual) {
+        assertEquals(expected, actual);
+        ContainerPointer e = expected.getContainerPointer();
+        ContainerPointer a = actual.getContainerPointer();
+        while (e.getContainer() != null) {
+            assertEquals(e.getContainer().getClass(), a.getContainer().getClass());
+            e.advance();
+            a.advance();
+        }
+    }
+
+    @Test
+    public void empty() {
+        RoaringBitmapWriter writer = new RoaringBitmapWriter();
+        assertTrue(writer.get().isEmpty());
+    }
+
+    @Test
+    public void sparseDenseAndRuns() {
+        RoaringBitmapWriter writer = new RoaringBitmapWriter();
+        RoaringBitmap expected = new RoaringBitmap();
+        // sparse chunk
+        for (int k = 0; k < 100; ++k) {
+            writer.add(k * 13);
+            expected.add(k * 13);
+        }
+        // dense chunk
+        for (int k = 1 << 16; k < 2 << 16; k += 3) {
+            writer.add(k);
+            expected.add(k);
+        }
+        // runs
+        for (int k = 5 << 16; k < (5 << 16) + 20000; ++k) {
+            writer.add(k);
+            expected.add(k);
+        }
+        // full chunk
+        for (int k = 7 << 16; k < 8 << 16; ++k) {
+            writer.add(k);
+            expected.add(k);
+        }
+        expected.runOptimize();
+        RoaringBitmap rb = writer.get();
+        assertSameContainers(expected, rb);
+        assertEquals(expected.getCardinality(), rb.getCardinality());
+    }
+
+    @Test
+    public void randomSorted() {
+        Random r = new Random(1234);
+        RoaringBitmapWriter writer = new RoaringBitmapWriter();
+        RoaringBitmap expected = new RoaringBitmap();
+        int x = 0;
+        for (int k = 0; k < 100000; ++k) {
+            x += r.nextInt(k % 2 == 0 ? 3 : 300);
+            writer.add(x);
+            expected.add(x);
+        }
+        expected.runOptimize();
+        assertSameContainers(expected, writer.get());
+    }
+
+    @Test
+    public void duplicatesAndUnsignedOrder() {
+        RoaringBitmapWriter writer = new RoaringBitmapWriter();
+        writer.add(1, 1, 2, 0x7FFFFFFF, 0x80000000, 0xFFFFFFFE, 0xFFFFFFFF);
+        assertEquals(RoaringBitmap.bitmapOf(1, 2, 0x7FFFFFFF, 0x80000000, 0xFFFFFFFE, 0xFFFFFFFF),
+            writer.get());
+    }
+
+    @Test
+    public void flushInsideChunk() {
+        RoaringBitmapWriter writer = new RoaringBitmapWriter();
+        writer.add(1, 2, 3);
+        writer.flush();
+        writer.add(4, 5, 1 << 16);
+        RoaringBitmap rb = writer.get();
+        assertEquals(RoaringBitmap.bitmapOf(1, 2, 3, 4, 5, 1 << 16), rb);
+        writer.add(2 << 16);
+        assertEquals(RoaringBitmap.bitmapOf(1, 2, 3, 4, 5, 1 << 16, 2 << 16), writer.get());
+    }
+
+    @Test
+    public void runsAcrossChunks() {
+        RoaringBitmapWriter writer = new RoaringBitmapWriter();
+        RoaringBitmap expected = new RoaringBitmap();
+        // a run spanning two chunks, with repeated values, then short runs
+        for (int k = (1 << 16) - 3000; k < (1 << 16) + 3000; ++k) {
+            writer.add(k, k);
+            expected.add(k);
+        }
+        for (int k = 3 << 16; k < (3 << 16) + 30000; k += 10) {
+            writer.add(k, k + 1, k + 2);
+            expected.add(k, k + 1, k + 2);
+        }
+        expected.runOptimize();
+        assertSameContainers(expected, writer.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void outOfOrder() {
+        RoaringBitmapWriter writer = new RoaringBitmapWriter();
+        writer.add(10);
+        writer.add(9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void outOfOrderUnsigned() {
+        RoaringBitmapWriter writer = new RoaringBitmapWriter();
+        writer.add(-1);
+        writer.add(1);
+    }
+}
@@ -3215,4 +3215,61 @@ public class TestRunContainer {
     assertFalse(rc.contains(disjoint));
     assertFalse(disjoint.contains(rc));
   }
+
+  // many short runs against a few values or runs, so that the operations gallop over the runs
+  @Test
+  public void gallopingOverManyRuns() {
+    Container many = new RunContainer();
+    for (int k = 0; k < 1 << 16; k += 4) {
+      many = many.iadd(k, k + 2);
+    }
+    assertTrue(many instanceof RunContainer);
+    Container fewValues = new ArrayContainer();
+    for (int v : new int[] {1, 2, 5000, 5001, 40002, 65533}) {
+      fewValues = fewValues.add((short) v);
+    }
+    Container fewRuns = new RunContainer().add(3, 11).add(30000, 30010).add(65530, 65536);
+    Container bitmap = ((RunContainer) many).toBitmapContainer();
+    for (Container x : new Container[] {fewValues, fewRuns}) {
+      Container expected = bitmap.and(x);
+      assertEquals(expected, many.and(x));
+      assertEquals(expected, x.and(many));
+      assertEquals(expected.getCardinality(), many.andCardinality(x));
+      assertEquals(expected.getCardinality(), x.andCardinality(many));
+      assertTrue(many.intersects(x));
+      assertTrue(x.intersects(many));
+    }
+    Container disjoint = new RunContainer().add(2, 4).add(40002, 40004);
+    assertFalse(many.intersects(disjoint));
+    assertEquals(0, many.andCardinality(disjoint));
+    assertEquals(0, many.andCardinality(new ArrayContainer().add((short) 3)));
+    assertEquals(0, new RunContainer().andCardinality(new ArrayContainer().add((short) 3)));
+    // subsets
+    assertTrue(many.contains(new ArrayContainer().add((short) 0).add((short) 65533)));
+    assertFalse(many.contains(new ArrayContainer().add((short) 0).add((short) 65534)));
+    assertTrue(many.contains(new RunContainer().add(4, 6).add(65532, 65534)));
+    assertFalse(many.contains(new RunContainer().add(4, 6).add(65532, 65535)));
+    assertFalse(many.contains(new RunContainer().add(4, 7)));
+    assertTrue(many.contains(new RunContainer()));
+    Container wide = new RunContainer().add(0, 10);
+    assertTrue(wide.contains(new RunContainer().add(2, 4).add(6, 9)));
+    assertFalse(wide.contains(new RunContainer().add(2, 4).add(20, 25)));
+    assertTrue(wide.contains(new ArrayContainer().add((short) 0).add((short) 9)));
+    assertFalse(wide.contains(new ArrayContainer().add((short) 9).add((short) 10)));
+    assertTrue(many.contains(many.clone()));
+  }
+
+  // overlaps of more than 32767 values used to be truncated to a short
+  @Test
+  public void andCardinalityOfLongRuns() {
+    RunContainer x = (RunContainer) new RunContainer().add(0, 40000).add(60000, 60010);
+    RunContainer y = (RunContainer) new RunContainer().add(1000, 50000);
+    assertEquals(39000, x.andCardinality(y));
+    assertEquals(39000, y.andCardinality(x));
+    assertEquals(x.and(y).getCardinality(), x.andCardinality(y));
+    RunContainer full = (RunContainer) new RunContainer().add(0, 1 << 16);
+    assertEquals(1 << 16, full.andCardinality((RunContainer) full.clone()));
+    assertEquals(40010, full.andCardinality(x));
+    assertEquals(39000, x.andCardinality((Container) y, 1 << 16));
+  }
 }
@@ -0,0 +1,109 @@
+package org.roaringbitmap;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TestSimilarity {
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private static List<RoaringBitmap> randomBitmaps(Random r, int count) {
+        List<RoaringBitmap> bitmaps = new ArrayList<>();
+        for (int k = 0; k < count; ++k) {
+            RoaringBitmap rb = new RoaringBitmap();
+            for (int j = 0; j < 10000; ++j) {
+                rb.add(r.nextInt(1 << (18 + k % 3)));
+            }
+            rb.add((long) k << 16, (long) (k + 3) << 16);
+            rb.runOptimize();
+            bitmaps.add(rb);
+        }
+        bitmaps.add(new RoaringBitmap());
+        return bitmaps;
+    }
+
+    private static Similarity expected(RoaringBitmap x1, RoaringBitmap x2) {
+        return new Similarity(x1.getLongCardinality(), x2.getLongCardinality(),
+                RoaringBitmap.andCardinality(x1, x2));
+    }
+
+    @Test
+    public void compute() {
+        List<RoaringBitmap> bitmaps = randomBitmaps(new Random(1), 5);
+        for (RoaringBitmap x1 : bitmaps) {
+            for (RoaringBitmap x2 : bitmaps) {
+                Similarity s = Similarity.compute(x1, x2);
+                assertEquals(expected(x1, x2), s);
+                assertEquals(RoaringBitmap.orCardinality(x1, x2), s.getUnionCardinality());
+            }
+        }
+    }
+
+    @Test
+    public void coefficients() {
+        Similarity s = Similarity.compute(RoaringBitmap.bitmapOf(1, 2, 3, 4),
+                RoaringBitmap.bitmapOf(3, 4, 5));
+        assertEquals(2, s.getIntersectionCardinality());
+        assertEquals(5, s.getUnionCardinality());
+        assertEquals(0.4, s.jaccard(), 1e-9);
+        assertEquals(2.0 / 3, s.overlap(), 1e-9);
+        Similarity empty = Similarity.compute(new RoaringBitmap(), RoaringBitmap.bitmapOf(1));
+        assertEquals(0, empty.jaccard(), 0);
+        assertEquals(1, empty.overlap(), 0);
+        assertEquals(1, Similarity.compute(new RoaringBitmap(), new RoaringBitmap()).jaccard(), 0);
+    }
+
+    @Test
+    public void oneToMany() throws InterruptedException {
+        List<RoaringBitmap> bitmaps = randomBitmaps(new Random(2), 30);
+        RoaringBitmap probe = bitmaps.get(3);
+        Similarity[] sequential = Similarity.oneToMany(probe, bitmaps);
+        assertEquals(bitmaps.size(), sequential.length);
+        for (int k = 0; k < bitmaps.size(); ++k) {
+            assertEquals(expected(probe, bitmaps.get(k)), sequential[k]);
+        }
+        for (int tasks : new int[] {1, 3, 100}) {
+            Similarity[] parallel = Similarity.oneToMany(pool, tasks, probe, bitmaps);
+            for (int k = 0; k < bitmaps.size(); ++k) {
+                assertEquals(sequential[k], parallel[k]);
+            }
+        }
+        assertEquals(0, Similarity.oneToMany(pool, 4, probe,
+                Collections.<RoaringBitmap>emptyList()).length);
+    }
+
+    @Test
+    public void allPairs() throws InterruptedException {
+        List<RoaringBitmap> bitmaps = randomBitmaps(new Random(3), 12);
+        for (int tasks : new int[] {1, 4, 50}) {
+            Similarity[][] matrix = Similarity.allPairs(pool, tasks, bitmaps);
+            assertEquals(bitmaps.size(), matrix.length);
+            for (int i = 0; i < bitmaps.size(); ++i) {
+                for (int j = i; j < bitmaps.size(); ++j) {
+                    assertEquals(expected(bitmaps.get(i), bitmaps.get(j)), matrix[i][j]);
+                    assertSame(matrix[i][j], matrix[j][i]);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tasksMustBePositive() throws InterruptedException {
+        Similarity.allPairs(pool, 0, new ArrayList<RoaringBitmap>());
+    }
+}
@@ -0,0 +1,111 @@
+package org.roaringbitmap;
+
+import org.junit.Test;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TestSlice {
+
+    private static RoaringBitmap randomBitmap(Random r) {
+        RoaringBitmap rb = new RoaringBitmap();
+        for (int k = 0; k < 10000; ++k) {
+            rb.add(r.nextInt());
+        }
+        for (int k = 0; k < 20000; ++k) {
+            rb.add((3 << 16) + r.nextInt(1 << 16));
+        }
+        rb.add(10L << 16, (12L << 16) + 17);
+        rb.runOptimize();
+        return rb;
+    }
+
+    private static int[] reversed(int[] values) {
+        int[] answer = new int[values.length];
+        for (int k = 0; k < values.length; ++k) {
+            answer[k] = values[values.length - 1 - k];
+        }
+        return answer;
+    }
+
+    private static int[] expectedPage(int[] values, long offset, int count) {
+        int from = (int) Math.min(offset, values.length);
+        int to = (int) Math.min(offset + count, values.length);
+        return Arrays.copyOfRange(values, from, to);
+    }
+
+    @Test
+    public void slicesMatchToArray() {
+        Random r = new Random(1);
+        RoaringBitmap rb = randomBitmap(r);
+        ImmutableRoaringBitmap irb = rb.toMutableRoaringBitmap();
+        int[] values = rb.toArray();
+        int[] reverse = reversed(values);
+        int[] out = new int[100000];
+        for (int k = 0; k < 200; ++k) {
+            long offset = r.nextInt(values.length + 100);
+            int count = r.nextInt(k % 2 == 0 ? 100 : out.length);
+            int[] expected = expectedPage(values, offset, count);
+            int n = rb.slice(offset, count, out);
+            assertArrayEquals(expected, Arrays.copyOf(out, n));
+            n = irb.slice(offset, count, out);
+            assertArrayEquals(expected, Arrays.copyOf(out, n));
+            expected = expectedPage(reverse, offset, count);
+            n = rb.reverseSlice(offset, count, out);
+            assertArrayEquals(expected, Arrays.copyOf(out, n));
+            n = irb.reverseSlice(offset, count, out);
+            assertArrayEquals(expected, Arrays.copyOf(out, n));
+        }
+    }
+
+    @Test
+    public void pagesCoverBitmap() {
+        RoaringBitmap rb = randomBitmap(new Random(2));
+        int[] page = new int[1000];
+        RoaringBitmap forward = new RoaringBitmap();
+        RoaringBitmap backward = new RoaringBitmap();
+        for (long offset = 0; offset < rb.getLongCardinality(); offset += page.length) {
+            int n = rb.slice(offset, page.length, page);
+            forward.add(Arrays.copyOf(page, n));
+            n = rb.reverseSlice(offset, page.length, page);
+            backward.add(Arrays.copyOf(page, n));
+        }
+        assertEquals(rb, forward);
+        assertEquals(rb, backward);
+    }
+
+    @Test
+    public void emptyAndZeroCount() {
+        int[] out = new int[10];
+        assertEquals(0, new RoaringBitmap().slice(0, 10, out));
+        assertEquals(0, new RoaringBitmap().reverseSlice(0, 10, out));
+        assertEquals(0, new MutableRoaringBitmap().slice(0, 10, out));
+        assertEquals(0, RoaringBitmap.bitmapOf(1, 2).slice(0, 0, out));
+        assertEquals(0, RoaringBitmap.bitmapOf(1, 2).reverseSlice(0, 0, out));
+    }
+
+    @Test
+    public void unsignedOrder() {
+        RoaringBitmap rb = RoaringBitmap.bitmapOf(-1, 1, 0x80000000, 5);
+        int[] out = new int[4];
+        assertEquals(2, rb.slice(2, 4, out));
+        assertArrayEquals(new int[] {0x80000000, -1}, Arrays.copyOf(out, 2));
+        assertEquals(3, rb.reverseSlice(1, 3, out));
+        assertArrayEquals(new int[] {0x80000000, 5, 1}, Arrays.copyOf(out, 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void countLargerThanArray() {
+        RoaringBitmap.bitmapOf(1, 2, 3).slice(0, 5, new int[4]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeOffset() {
+        MutableRoaringBitmap.bitmapOf(1, 2, 3).reverseSlice(-1, 2, new int[4]);
+    }
+}
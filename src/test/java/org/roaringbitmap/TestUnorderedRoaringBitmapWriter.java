@@ -0,0 +1,61 @@
+package org.roaringbitmap;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestUnorderedRoaringBitmapWriter {
+
+    @Test
+    public void empty() {
+        UnorderedRoaringBitmapWriter writer = new UnorderedRoaringBitmapWriter();
+        assertTrue(writer.get().isEmpty());
+    }
+
+    @Test
+    public void randomOrder() {
+        Random r = new Random(1);
+        UnorderedRoaringBitmapWriter writer = new UnorderedRoaringBitmapWriter();
+        RoaringBitmap expected = new RoaringBitmap();
+        for (int k = 0; k < 200000; ++k) {
+            // many sparse containers, a few dense ones and negative values
+            int x = k % 3 == 0 ? (5 << 16) + r.nextInt(1 << 16) : r.nextInt();
+            writer.add(x);
+            expected.add(x);
+        }
+        RoaringBitmap rb = writer.get();
+        assertEquals(expected, rb);
+        assertEquals(expected.getCardinality(), rb.getCardinality());
+    }
+
+    @Test
+    public void addsToExistingBitmap() {
+        Random r = new Random(2);
+        RoaringBitmap rb = new RoaringBitmap();
+        rb.add(100L << 16, 102L << 16);
+        for (int k = 0; k < 50000; ++k) {
+            rb.add(r.nextInt());
+        }
+        rb.runOptimize();
+        RoaringBitmap expected = rb.clone();
+        UnorderedRoaringBitmapWriter writer = new UnorderedRoaringBitmapWriter(rb);
+        for (int k = 0; k < 50000; ++k) {
+            int x = r.nextInt();
+            writer.add(x, (int) (100L << 16) + k);
+            expected.add(x);
+            expected.add((int) (100L << 16) + k);
+        }
+        assertSame(rb, writer.get());
+        assertEquals(expected, rb);
+        // the writer can be used again after get
+        writer.add(7, -7);
+        expected.add(7);
+        expected.add(-7);
+        assertEquals(expected, writer.get());
+        assertEquals(expected, writer.get());
+    }
+}
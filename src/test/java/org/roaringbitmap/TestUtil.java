@@ -3,6 +3,9 @@ package org.roaringbitmap;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Random;
+
 public class TestUtil {
 
     @Test
@@ -27,4 +30,67 @@ public class TestUtil {
         Assert.assertEquals(-1, Util.branchyUnsignedBinarySearch(data1, 0, 0, (short)0));
         Assert.assertEquals(-10, Util.branchyUnsignedBinarySearch(data1, 0, data1.length, (short) -1));
     }
+
+    // runs of the bitmap, bit by bit
+    private static short[] naiveRuns(long[] bitmap) {
+        short[] runs = new short[bitmap.length * 64];
+        int count = 0;
+        int k = 0;
+        while (k < bitmap.length * 64) {
+            if ((bitmap[k >>> 6] & (1L << k)) == 0) {
+                ++k;
+                continue;
+            }
+            int start = k;
+            while (k < bitmap.length * 64 && (bitmap[k >>> 6] & (1L << k)) != 0) {
+                ++k;
+            }
+            runs[count++] = (short) start;
+            runs[count++] = (short) (k - start - 1);
+        }
+        short[] answer = new short[count];
+        System.arraycopy(runs, 0, answer, 0, count);
+        return answer;
+    }
+
+    private static long[] randomRunsBitmap(Random random) {
+        long[] bitmap = new long[1024];
+        int pos = random.nextInt(3);
+        while (pos < bitmap.length * 64) {
+            int end = Math.min(bitmap.length * 64, pos + 1 + random.nextInt(200));
+            Util.setBitmapRange(bitmap, pos, end);
+            pos = end + 1 + random.nextInt(200);
+        }
+        return bitmap;
+    }
+
+    private static void assertRuns(long[] bitmap) {
+        short[] expected = naiveRuns(bitmap);
+        short[] runs = new short[expected.length];
+        Assert.assertEquals(expected.length / 2, Util.bitmapToRuns(bitmap, runs));
+        Assert.assertArrayEquals(expected, runs);
+    }
+
+    @Test
+    public void testBitmapToRuns() {
+        assertRuns(new long[1024]);
+        long[] full = new long[1024];
+        Util.setBitmapRange(full, 0, 1 << 16);
+        assertRuns(full);
+        // runs crossing words, ending and starting on word boundaries
+        long[] bitmap = new long[1024];
+        Util.setBitmapRange(bitmap, 0, 1);
+        Util.setBitmapRange(bitmap, 63, 65);
+        Util.setBitmapRange(bitmap, 128, 192);
+        Util.setBitmapRange(bitmap, 193, 1000);
+        Util.setBitmapRange(bitmap, 65535, 65536);
+        assertRuns(bitmap);
+        long[] alternating = new long[1024];
+        Arrays.fill(alternating, 0x5555555555555555L);
+        assertRuns(alternating);
+        Random random = new Random(1234);
+        for (int k = 0; k < 100; ++k) {
+            assertRuns(randomRunsBitmap(random));
+        }
+    }
 }
@@ -0,0 +1,203 @@
+package org.roaringbitmap.bsi;
+
+import org.junit.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestRoaringBitmapSliceIndex {
+
+    private static final int COLUMNS = 20000;
+
+    // values[c] < 0 means that column c has no value
+    private static long[] randomValues(Random r) {
+        long[] values = new long[COLUMNS];
+        for (int c = 0; c < COLUMNS; ++c) {
+            values[c] = r.nextInt(10) == 0 ? -1 : 1900 + r.nextInt(120);
+        }
+        return values;
+    }
+
+    private static RoaringBitmapSliceIndex index(long[] values) {
+        RoaringBitmapSliceIndex bsi = new RoaringBitmapSliceIndex();
+        for (int c = 0; c < values.length; ++c) {
+            if (values[c] >= 0) {
+                bsi.setValue(c, values[c]);
+            }
+        }
+        return bsi;
+    }
+
+    private static boolean matches(Operation op, long x, long value) {
+        switch (op) {
+            case EQ:
+                return x == value;
+            case NEQ:
+                return x != value;
+            case LT:
+                return x < value;
+            case LE:
+                return x <= value;
+            case GT:
+                return x > value;
+            default:
+                return x >= value;
+        }
+    }
+
+    @Test
+    public void setAndGet() {
+        RoaringBitmapSliceIndex bsi = new RoaringBitmapSliceIndex();
+        bsi.setValue(1, 5);
+        bsi.setValue(2, 1L << 40);
+        bsi.setValue(1, 2);
+        bsi.setValue(3, 0);
+        assertEquals(2, bsi.getValue(1));
+        assertEquals(1L << 40, bsi.getValue(2));
+        assertEquals(0, bsi.getValue(3));
+        assertTrue(bsi.valueExist(3));
+        assertFalse(bsi.valueExist(4));
+        assertEquals(3, bsi.getLongCardinality());
+        assertEquals(41, bsi.bitCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeValue() {
+        new RoaringBitmapSliceIndex().setValue(1, -1);
+    }
+
+    @Test
+    public void compareMatchesScan() {
+        Random r = new Random(1);
+        long[] values = randomValues(r);
+        RoaringBitmapSliceIndex bsi = index(values);
+        RoaringBitmap foundSet = new RoaringBitmap();
+        for (int c = 0; c < COLUMNS; c += 3) {
+            foundSet.add(c);
+        }
+        long[] probes = {0, 1899, 1900, 1950, 1957, 2019, 2020, 1L << 20, -5};
+        for (long probe : probes) {
+            for (Operation op : Operation.values()) {
+                RoaringBitmap expected = new RoaringBitmap();
+                RoaringBitmap expectedInFoundSet = new RoaringBitmap();
+                for (int c = 0; c < COLUMNS; ++c) {
+                    if (values[c] >= 0 && matches(op, values[c], probe)) {
+                        expected.add(c);
+                        if (foundSet.contains(c)) {
+                            expectedInFoundSet.add(c);
+                        }
+                    }
+                }
+                assertEquals(op + " " + probe, expected, bsi.compare(op, probe, null));
+                assertEquals(op + " " + probe, expectedInFoundSet,
+                    bsi.compare(op, probe, foundSet));
+            }
+        }
+        RoaringBitmap expected = new RoaringBitmap();
+        for (int c = 0; c < COLUMNS; ++c) {
+            if (values[c] >= 1930 && values[c] <= 1940) {
+                expected.add(c);
+            }
+        }
+        assertEquals(expected, bsi.range(1930, 1940, null));
+    }
+
+    @Test
+    public void aggregates() throws InterruptedException {
+        Random r = new Random(2);
+        long[] values = randomValues(r);
+        RoaringBitmapSliceIndex bsi = index(values);
+        RoaringBitmap foundSet = new RoaringBitmap();
+        for (int c = 0; c < COLUMNS; ++c) {
+            if (r.nextInt(5) == 0) {
+                foundSet.add(c);
+            }
+        }
+        long sum = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int c : foundSet) {
+            if (values[c] >= 0) {
+                sum += values[c];
+                min = Math.min(min, values[c]);
+                max = Math.max(max, values[c]);
+            }
+        }
+        assertEquals(sum, bsi.sum(foundSet));
+        assertEquals(min, bsi.min(foundSet));
+        assertEquals(max, bsi.max(foundSet));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertEquals(sum, bsi.parallelSum(foundSet, executor));
+            long total = 0;
+            for (long v : values) {
+                total += Math.max(v, 0);
+            }
+            assertEquals(total, bsi.parallelSum(null, executor));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void minOfEmptySet() {
+        index(new long[] {1, 2, 3}).min(RoaringBitmap.bitmapOf(7));
+    }
+
+    @Test
+    public void topK() {
+        Random r = new Random(3);
+        final long[] values = randomValues(r);
+        RoaringBitmapSliceIndex bsi = index(values);
+        Integer[] columns = new Integer[COLUMNS];
+        for (int c = 0; c < COLUMNS; ++c) {
+            columns[c] = c;
+        }
+        // decreasing values, then increasing column ids
+        Arrays.sort(columns, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int cmp = Long.compare(values[b], values[a]);
+                return cmp != 0 ? cmp : Integer.compare(a, b);
+            }
+        });
+        for (int k : new int[] {0, 1, 10, 157, 5000}) {
+            RoaringBitmap expected = new RoaringBitmap();
+            for (int i = 0; i < k; ++i) {
+                expected.add(columns[i]);
+            }
+            assertEquals(expected, bsi.topK(k, null));
+        }
+        assertEquals(bsi.getExistenceBitmap(), bsi.topK(COLUMNS, null));
+    }
+
+    @Test
+    public void serialization() throws IOException {
+        RoaringBitmapSliceIndex bsi = index(randomValues(new Random(4)));
+        bsi.runOptimize();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        bsi.serialize(new DataOutputStream(bos));
+        assertEquals(bsi.serializedSizeInBytes(), bos.size());
+        RoaringBitmapSliceIndex copy = new RoaringBitmapSliceIndex();
+        copy.deserialize(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+        assertEquals(bsi.getExistenceBitmap(), copy.getExistenceBitmap());
+        assertEquals(bsi.sum(null), copy.sum(null));
+        for (int c = 0; c < COLUMNS; c += 101) {
+            assertEquals(bsi.getValue(c), copy.getValue(c));
+        }
+    }
+}
@@ -1238,13 +1238,41 @@ public class TestImmutableRoaringBitmap {
       Assert.assertEquals(0, resultInt.getCardinality());
   }
 
-
-
-
-
-
-
-
-
+  @Test
+  public void andCardinalityAtLeast() throws IOException {
+    Random r = new Random(2345);
+    for (int trial = 0; trial < 20; ++trial) {
+      MutableRoaringBitmap rb1 = new MutableRoaringBitmap();
+      MutableRoaringBitmap rb2 = new MutableRoaringBitmap();
+      // array, bitmap and run containers
+      for (int k = 0; k < 6; ++k) {
+        int n = r.nextInt(3) == 0 ? 100 : 20000;
+        for (int j = 0; j < n; ++j) {
+          rb1.add((k << 16) + r.nextInt(1 << 16));
+          rb2.add((k << 16) + r.nextInt(1 << 16));
+        }
+      }
+      rb1.add(6L << 16, (6L << 16) + r.nextInt(60000));
+      rb2.add(6L << 16, (6L << 16) + r.nextInt(60000));
+      if (trial % 2 == 0) {
+        rb1.runOptimize();
+      }
+      ByteBuffer buffer1 = serializeRoaring(rb1);
+      buffer1.rewind();
+      ImmutableRoaringBitmap ir1 = new ImmutableRoaringBitmap(buffer1);
+      ByteBuffer buffer2 = serializeRoaring(rb2);
+      buffer2.rewind();
+      ImmutableRoaringBitmap ir2 = new ImmutableRoaringBitmap(buffer2);
+      long card = ImmutableRoaringBitmap.andCardinality(rb1, rb2);
+      for (long limit : new long[] {-1, 0, 1, 2, card / 2, card - 1, card}) {
+        Assert.assertTrue(ImmutableRoaringBitmap.andCardinalityAtLeast(rb1, rb2, limit));
+        Assert.assertTrue(ImmutableRoaringBitmap.andCardinalityAtLeast(ir2, ir1, limit));
+      }
+      for (long limit : new long[] {card + 1, card + 100000, Long.MAX_VALUE}) {
+        Assert.assertFalse(ImmutableRoaringBitmap.andCardinalityAtLeast(rb1, rb2, limit));
+        Assert.assertFalse(ImmutableRoaringBitmap.andCardinalityAtLeast(ir2, ir1, limit));
+      }
+    }
+  }
 
 }
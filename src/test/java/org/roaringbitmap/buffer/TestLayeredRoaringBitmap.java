@@ -0,0 +1,120 @@
+package org.roaringbitmap.buffer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestLayeredRoaringBitmap {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ImmutableRoaringBitmap map(MutableRoaringBitmap rb) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        rb.serialize(new DataOutputStream(bos));
+        return new ImmutableRoaringBitmap(ByteBuffer.wrap(bos.toByteArray()));
+    }
+
+    private static MutableRoaringBitmap randomBitmap(Random r) {
+        MutableRoaringBitmap rb = new MutableRoaringBitmap();
+        for (int k = 0; k < 20000; ++k) {
+            rb.add(r.nextInt(1 << 20));
+        }
+        rb.add(2000000L, 2100000L);
+        rb.runOptimize();
+        return rb;
+    }
+
+    private static void update(LayeredRoaringBitmap layered, MutableRoaringBitmap expected,
+            Random r, int count) {
+        for (int k = 0; k < count; ++k) {
+            int x = r.nextBoolean() ? r.nextInt(1 << 20) : 2000000 + r.nextInt(1 << 18);
+            if (r.nextBoolean()) {
+                layered.add(x);
+                expected.add(x);
+            } else {
+                layered.remove(x);
+                expected.remove(x);
+            }
+        }
+    }
+
+    @Test
+    public void readsApplyTheDeltas() throws IOException {
+        Random r = new Random(3);
+        MutableRoaringBitmap expected = randomBitmap(r);
+        ImmutableRoaringBitmap base = map(expected);
+        MutableRoaringBitmap original = expected.clone();
+        LayeredRoaringBitmap layered = new LayeredRoaringBitmap(base);
+        update(layered, expected, r, 30000);
+        // a container emptied by the removes, and a container only in the adds
+        for (int x = 0; x < 1 << 16; ++x) {
+            layered.remove(x);
+            expected.remove(x);
+        }
+        layered.add(-1);
+        expected.add(-1);
+        assertEquals(expected, layered.snapshot());
+        assertEquals(expected, layered.toMutableRoaringBitmap());
+        assertEquals(expected.getLongCardinality(), layered.getLongCardinality());
+        assertTrue(layered.contains(-1));
+        assertFalse(layered.contains(5));
+        assertEquals(expected.contains(2000001), layered.contains(2000001));
+        assertEquals(map(expected), map(layered.toMutableRoaringBitmap()));
+        // the base is left untouched
+        assertEquals(original, layered.getBase());
+    }
+
+    @Test
+    public void compactionMergesTheDeltas() throws IOException {
+        Random r = new Random(4);
+        MutableRoaringBitmap expected = randomBitmap(r);
+        LayeredRoaringBitmap layered = new LayeredRoaringBitmap(map(expected));
+        update(layered, expected, r, 10000);
+        File file = folder.newFile("compacted.bin");
+        layered.compact(file);
+        assertEquals(0, layered.getDeltaCardinality());
+        assertEquals(expected, layered.getBase());
+        assertEquals(expected, layered.snapshot());
+        update(layered, expected, r, 1000);
+        layered.compact(folder.newFile("compacted2.bin"));
+        assertEquals(expected, layered.getBase());
+    }
+
+    @Test
+    public void updatesDuringCompactionAreKept() throws IOException, InterruptedException {
+        Random r = new Random(5);
+        final MutableRoaringBitmap expected = randomBitmap(r);
+        final LayeredRoaringBitmap layered = new LayeredRoaringBitmap(map(expected));
+        update(layered, expected, r, 10000);
+        final File file = folder.newFile("compacted.bin");
+        Thread compaction = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    layered.compact(file);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        compaction.start();
+        update(layered, expected, r, 100000);
+        compaction.join();
+        assertEquals(expected, layered.snapshot());
+        assertEquals(expected.getLongCardinality(), layered.getLongCardinality());
+        layered.compact(folder.newFile("compacted2.bin"));
+        assertEquals(expected, layered.getBase());
+    }
+}
@@ -847,11 +847,54 @@ public class TestRange {
       assertTrue(rb1.equals(rb2));
   }
 
-
-
-
-
-
-
-
+  private static MutableRoaringBitmap randomRangeBitmap(Random r) {
+      MutableRoaringBitmap rb = new MutableRoaringBitmap();
+      for (int k = 0; k < 2000; ++k) {
+          rb.add(r.nextInt(20 << 16));
+      }
+      rb.add((long) r.nextInt(10 << 16), (long) (10 << 16) + r.nextInt(10 << 16));
+      if (r.nextBoolean()) {
+          rb.runOptimize();
+      }
+      return rb;
+  }
+
+  @Test
+  public void testRangedAggregationsMatchClippedInputs() {
+      Random r = new Random(42);
+      for (int trial = 0; trial < 50; ++trial) {
+          List<MutableRoaringBitmap> list = new ArrayList<>();
+          for (int k = 0; k < 1 + r.nextInt(4); ++k) {
+              list.add(randomRangeBitmap(r));
+          }
+          long rangeStart = r.nextInt(21 << 16);
+          long rangeEnd = rangeStart + r.nextInt(trial % 2 == 0 ? 1 << 16 : 12 << 16);
+          if (trial == 0) {
+              rangeStart = 3 << 16;
+              rangeEnd = 9 << 16;
+          }
+          MutableRoaringBitmap range = new MutableRoaringBitmap();
+          range.add(rangeStart, rangeEnd);
+          List<MutableRoaringBitmap> clipped = new ArrayList<>();
+          for (MutableRoaringBitmap rb : list) {
+              clipped.add(MutableRoaringBitmap.and(rb, range));
+          }
+          MutableRoaringBitmap[] inputs = clipped.toArray(new MutableRoaringBitmap[0]);
+          assertEquals(BufferFastAggregation.naive_and(inputs),
+              ImmutableRoaringBitmap.and(list.iterator(), rangeStart, rangeEnd));
+          assertEquals(BufferFastAggregation.naive_or(inputs),
+              ImmutableRoaringBitmap.or(list.iterator(), rangeStart, rangeEnd));
+          assertEquals(BufferFastAggregation.naive_xor(inputs),
+              ImmutableRoaringBitmap.xor(list.iterator(), rangeStart, rangeEnd));
+          assertEquals(MutableRoaringBitmap.andNot(inputs[0], MutableRoaringBitmap.and(list.get(1 % inputs.length),
+              range)), ImmutableRoaringBitmap.andNot(list.get(0), list.get(1 % inputs.length), rangeStart,
+              rangeEnd));
+      }
+      // inputs are not modified
+      MutableRoaringBitmap rb = MutableRoaringBitmap.bitmapOf(1, 2, 1 << 16, 3 << 16);
+      MutableRoaringBitmap copy = rb.clone();
+      ImmutableRoaringBitmap.or(java.util.Arrays.asList(rb, rb).iterator(), 2L, (3L << 16) + 1).add(7);
+      ImmutableRoaringBitmap.xor(java.util.Arrays.asList(rb).iterator(), 0L, 1L << 20).add(7);
+      assertEquals(copy, rb);
+  }
 }
@@ -0,0 +1,90 @@
+package org.roaringbitmap.buffer;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestSegmentedBitmapIndex {
+
+    private static final String[] KEYS = {"country=FR", "country=US", "device=mobile"};
+
+    // appends batches of consecutive rows, each row matching one random key
+    private static Map<String, MutableRoaringBitmap> ingest(SegmentedBitmapIndex<String> index,
+            int batches, Random r) {
+        Map<String, MutableRoaringBitmap> expected = new HashMap<String, MutableRoaringBitmap>();
+        for (String key : KEYS) {
+            expected.put(key, new MutableRoaringBitmap());
+        }
+        int row = 0;
+        for (int b = 0; b < batches; ++b) {
+            Map<String, MutableRoaringBitmap> batch = new HashMap<String, MutableRoaringBitmap>();
+            for (int k = 0; k < 1000; ++k, ++row) {
+                String key = KEYS[r.nextInt(KEYS.length)];
+                if (!batch.containsKey(key)) {
+                    batch.put(key, new MutableRoaringBitmap());
+                }
+                batch.get(key).add(row);
+                expected.get(key).add(row);
+            }
+            index.append(batch);
+        }
+        return expected;
+    }
+
+    @Test
+    public void queriesOrAllSegments() {
+        SegmentedBitmapIndex<String> index = new SegmentedBitmapIndex<String>(4, null);
+        Map<String, MutableRoaringBitmap> expected = ingest(index, 3, new Random(6));
+        assertEquals(3, index.getSegmentCount());
+        for (String key : KEYS) {
+            assertEquals(expected.get(key), index.get(key));
+        }
+        assertTrue(index.get("country=DE").isEmpty());
+        assertFalse(index.merge());
+    }
+
+    @Test
+    public void segmentsAreMergedByLevel() {
+        SegmentedBitmapIndex<String> index = new SegmentedBitmapIndex<String>(4, null);
+        // 23 = 1 * 16 + 1 * 4 + 3 segments
+        Map<String, MutableRoaringBitmap> expected = ingest(index, 23, new Random(7));
+        assertEquals(5, index.getSegmentCount());
+        long size = 0;
+        for (String key : KEYS) {
+            assertEquals(expected.get(key), index.get(key));
+            size += expected.get(key).serializedSizeInBytes();
+        }
+        assertTrue(index.serializedSizeInBytes() >= size);
+    }
+
+    @Test
+    public void backgroundMerges() throws InterruptedException {
+        ExecutorService merger = Executors.newSingleThreadExecutor();
+        SegmentedBitmapIndex<String> index = new SegmentedBitmapIndex<String>(2, merger);
+        Map<String, MutableRoaringBitmap> expected = ingest(index, 37, new Random(8));
+        for (String key : KEYS) {
+            assertEquals(expected.get(key), index.get(key));
+        }
+        merger.shutdown();
+        assertTrue(merger.awaitTermination(1, TimeUnit.MINUTES));
+        // 37 = 32 + 4 + 1
+        assertEquals(3, index.getSegmentCount());
+        for (String key : KEYS) {
+            assertEquals(expected.get(key), index.get(key));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeFactorIsChecked() {
+        new SegmentedBitmapIndex<String>(1, null);
+    }
+}
@@ -10,6 +10,7 @@ import java.nio.ByteBuffer;
 import java.nio.LongBuffer;
 import java.nio.ShortBuffer;
 import java.util.Arrays;
+import java.util.Random;
 
 public class TestUtil {
   
@@ -65,4 +66,41 @@ public class TestUtil {
         Assert.assertFalse(BufferUtil.unsignedIntersects(data4, data4.limit(), data5, data5.limit()));
     }
 
+    @Test
+    public void testBitmapToRunsDirectBuffer() {
+        Random random = new Random(1234);
+        for (int k = 0; k < 20; ++k) {
+            LongBuffer direct = ByteBuffer.allocateDirect(1024 * 8).asLongBuffer();
+            int pos = random.nextInt(3);
+            while (pos < 1 << 16) {
+                int end = Math.min(1 << 16, pos + 1 + random.nextInt(200));
+                BufferUtil.setBitmapRange(direct, pos, end);
+                pos = end + 1 + random.nextInt(200);
+            }
+            short[] expected = naiveRuns(direct);
+            short[] runs = new short[expected.length];
+            Assert.assertEquals(expected.length / 2, BufferUtil.bitmapToRuns(direct, runs));
+            Assert.assertArrayEquals(expected, runs);
+        }
+    }
+
+    // the runs as (start, length - 1) pairs, found bit by bit
+    private static short[] naiveRuns(LongBuffer bitmap) {
+        short[] runs = new short[1 << 16];
+        int count = 0;
+        int k = 0;
+        while (k < 1 << 16) {
+            if ((bitmap.get(k >>> 6) & (1L << k)) == 0) {
+                ++k;
+                continue;
+            }
+            int start = k;
+            while (k < 1 << 16 && (bitmap.get(k >>> 6) & (1L << k)) != 0) {
+                ++k;
+            }
+            runs[count++] = (short) start;
+            runs[count++] = (short) (k - start - 1);
+        }
+        return Arrays.copyOf(runs, count);
+    }
 }
@@ -0,0 +1,69 @@
+package org.roaringbitmap.longlong;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestImmutableRoaring64NavigableMap {
+
+    private static ByteBuffer serialize(Roaring64NavigableMap rb, int padding) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        for (int k = 0; k < padding; ++k) {
+            dos.writeByte(k);
+        }
+        rb.serialize(dos);
+        dos.writeInt(0xCAFE);
+        ByteBuffer bb = ByteBuffer.wrap(bos.toByteArray());
+        bb.position(padding);
+        return bb;
+    }
+
+    @Test
+    public void mapsSerializedBitmap() throws IOException {
+        long[] values = TestRoaring64NavigableMap.randomValues(new Random(7), 5000);
+        Roaring64NavigableMap rb = Roaring64NavigableMap.bitmapOf(values);
+        rb.runOptimize();
+        ByteBuffer bb = serialize(rb, 3);
+        ImmutableRoaring64NavigableMap irb = new ImmutableRoaring64NavigableMap(bb);
+        assertEquals(3, bb.position());
+        assertEquals(rb.serializedSizeInBytes(), irb.serializedSizeInBytes());
+        assertEquals(0xCAFE, bb.getInt(3 + (int) irb.serializedSizeInBytes()));
+
+        assertEquals(values.length, irb.getLongCardinality());
+        assertArrayEquals(values, TestRoaring64NavigableMap.toArray(irb.getLongIterator()));
+        long[] reversed = TestRoaring64NavigableMap.toArray(irb.getReverseLongIterator());
+        assertEquals(values.length, reversed.length);
+        assertEquals(values[0], reversed[values.length - 1]);
+        long[] buffer = new long[values.length + 10];
+        assertEquals(values.length, irb.getBatchIterator().nextBatch(buffer));
+        for (int k = 0; k < values.length; k += 11) {
+            assertTrue(irb.contains(values[k]));
+            assertFalse(irb.contains(values[k] + 1) && !rb.contains(values[k] + 1));
+            assertEquals(values[k], irb.select(k));
+            assertEquals(k + 1, irb.rankLong(values[k]));
+        }
+        assertEquals(rb, irb.toRoaring64NavigableMap());
+        assertEquals(rb.toString(), irb.toString());
+    }
+
+    @Test
+    public void empty() throws IOException {
+        ImmutableRoaring64NavigableMap irb =
+            new ImmutableRoaring64NavigableMap(serialize(new Roaring64NavigableMap(), 0));
+        assertTrue(irb.isEmpty());
+        assertEquals(0, irb.getLongCardinality());
+        assertFalse(irb.getLongIterator().hasNext());
+        assertEquals(4, irb.serializedSizeInBytes());
+        assertTrue(irb.toRoaring64NavigableMap().isEmpty());
+    }
+}
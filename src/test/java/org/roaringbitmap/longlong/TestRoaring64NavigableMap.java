@@ -0,0 +1,207 @@
+package org.roaringbitmap.longlong;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestRoaring64NavigableMap {
+
+    // values in unsigned order, spread over a few buckets including ones with the sign bit set
+    static long[] randomValues(Random r, int n) {
+        long[] highs = {0, 1, 7, 1L << 31, -1L >>> 32};
+        TreeSet<Long> set = new TreeSet<>();
+        while (set.size() < n) {
+            long high = highs[r.nextInt(highs.length)];
+            long low = r.nextBoolean() ? r.nextInt(1 << 20) : r.nextInt() & 0xFFFFFFFFL;
+            set.add((high << 32) | low);
+        }
+        long[] answer = new long[n];
+        int k = 0;
+        for (long x : set) {
+            answer[k++] = x ^ Long.MIN_VALUE;
+        }
+        Arrays.sort(answer);
+        for (k = 0; k < n; ++k) {
+            answer[k] ^= Long.MIN_VALUE;
+        }
+        return answer;
+    }
+
+    static long[] toArray(LongIterator it) {
+        long[] answer = new long[16];
+        int n = 0;
+        while (it.hasNext()) {
+            if (n == answer.length) {
+                answer = Arrays.copyOf(answer, 2 * n);
+            }
+            answer[n++] = it.next();
+        }
+        return Arrays.copyOf(answer, n);
+    }
+
+    @Test
+    public void addContainsRemove() {
+        Roaring64NavigableMap rb = new Roaring64NavigableMap();
+        assertTrue(rb.isEmpty());
+        rb.addLong(5L);
+        rb.addLong(5000000000L);
+        rb.addLong(-1L);
+        assertTrue(rb.contains(5L));
+        assertTrue(rb.contains(5000000000L));
+        assertTrue(rb.contains(-1L));
+        assertFalse(rb.contains(6L));
+        assertFalse(rb.contains(5L + (1L << 32)));
+        assertEquals(3, rb.getLongCardinality());
+        rb.removeLong(5000000000L);
+        rb.removeLong(42L);
+        assertFalse(rb.contains(5000000000L));
+        assertEquals(Roaring64NavigableMap.bitmapOf(5L, -1L), rb);
+        assertEquals("{5,18446744073709551615}", rb.toString());
+    }
+
+    @Test
+    public void iterationIsUnsignedOrdered() {
+        long[] values = randomValues(new Random(1), 10000);
+        long[] shuffled = values.clone();
+        Random r = new Random(2);
+        for (int k = shuffled.length - 1; k > 0; --k) {
+            int j = r.nextInt(k + 1);
+            long tmp = shuffled[k];
+            shuffled[k] = shuffled[j];
+            shuffled[j] = tmp;
+        }
+        Roaring64NavigableMap rb = Roaring64NavigableMap.bitmapOf(shuffled);
+        assertEquals(values.length, rb.getLongCardinality());
+        assertArrayEquals(values, toArray(rb.getLongIterator()));
+        long[] reversed = toArray(rb.getReverseLongIterator());
+        for (int k = 0; k < values.length; ++k) {
+            assertEquals(values[k], reversed[values.length - 1 - k]);
+        }
+    }
+
+    @Test
+    public void batchIterator() {
+        long[] values = randomValues(new Random(3), 5000);
+        Roaring64NavigableMap rb = Roaring64NavigableMap.bitmapOf(values);
+        long[] buffer = new long[333];
+        long[] seen = new long[values.length];
+        int n = 0;
+        LongBatchIterator it = rb.getBatchIterator();
+        while (it.hasNext()) {
+            int batch = it.nextBatch(buffer);
+            assertTrue(batch > 0);
+            System.arraycopy(buffer, 0, seen, n, batch);
+            n += batch;
+        }
+        assertEquals(0, it.nextBatch(buffer));
+        assertArrayEquals(values, seen);
+    }
+
+    @Test
+    public void rankAndSelect() {
+        long[] values = randomValues(new Random(4), 5000);
+        Roaring64NavigableMap rb = Roaring64NavigableMap.bitmapOf(values);
+        for (int k = 0; k < values.length; k += 7) {
+            assertEquals(values[k], rb.select(k));
+            assertEquals(k + 1, rb.rankLong(values[k]));
+            assertEquals(k, rb.rankLong(values[k] - 1));
+        }
+        assertEquals(values.length, rb.rankLong(-1L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void selectBeyondCardinality() {
+        Roaring64NavigableMap.bitmapOf(1L, 1L << 40).select(2);
+    }
+
+    @Test
+    public void logicalOperations() {
+        Random r = new Random(5);
+        long[] v1 = randomValues(r, 3000);
+        long[] v2 = randomValues(r, 3000);
+        TreeSet<Long> s1 = new TreeSet<>();
+        TreeSet<Long> s2 = new TreeSet<>();
+        for (long x : v1) {
+            s1.add(x);
+        }
+        for (long x : v2) {
+            s2.add(x);
+        }
+        Roaring64NavigableMap rb1 = Roaring64NavigableMap.bitmapOf(v1);
+        Roaring64NavigableMap rb2 = Roaring64NavigableMap.bitmapOf(v2);
+
+        TreeSet<Long> expected = new TreeSet<>(s1);
+        expected.retainAll(s2);
+        Roaring64NavigableMap and = rb1.clone();
+        and.and(rb2);
+        assertEquals(fromSet(expected), and);
+
+        expected = new TreeSet<>(s1);
+        expected.addAll(s2);
+        Roaring64NavigableMap or = rb1.clone();
+        or.or(rb2);
+        assertEquals(fromSet(expected), or);
+
+        expected = new TreeSet<>(s1);
+        expected.removeAll(s2);
+        Roaring64NavigableMap andNot = rb1.clone();
+        andNot.andNot(rb2);
+        assertEquals(fromSet(expected), andNot);
+
+        TreeSet<Long> intersection = new TreeSet<>(s1);
+        intersection.retainAll(s2);
+        expected = new TreeSet<>(s1);
+        expected.addAll(s2);
+        expected.removeAll(intersection);
+        Roaring64NavigableMap xor = rb1.clone();
+        xor.xor(rb2);
+        assertEquals(fromSet(expected), xor);
+
+        // inputs are untouched and empty buckets are dropped
+        assertEquals(Roaring64NavigableMap.bitmapOf(v1), rb1);
+        xor.xor(xor.clone());
+        assertTrue(xor.isEmpty());
+    }
+
+    private static Roaring64NavigableMap fromSet(TreeSet<Long> set) {
+        Roaring64NavigableMap answer = new Roaring64NavigableMap();
+        for (long x : set) {
+            answer.addLong(x);
+        }
+        return answer;
+    }
+
+    @Test
+    public void serialization() throws IOException, ClassNotFoundException {
+        Roaring64NavigableMap rb = Roaring64NavigableMap.bitmapOf(randomValues(new Random(6), 4000));
+        rb.runOptimize();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        rb.serialize(new DataOutputStream(bos));
+        assertEquals(rb.serializedSizeInBytes(), bos.size());
+        Roaring64NavigableMap copy = new Roaring64NavigableMap();
+        copy.addLong(123L);
+        copy.deserialize(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+        assertEquals(rb, copy);
+
+        bos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bos);
+        oos.writeObject(rb);
+        oos.close();
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        assertEquals(rb, ois.readObject());
+    }
+}